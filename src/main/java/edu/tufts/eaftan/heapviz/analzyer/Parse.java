@@ -17,17 +17,22 @@
 package edu.tufts.eaftan.heapviz.analzyer;
 import java.io.BufferedInputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import edu.tufts.eaftan.heapviz.analzyer.histogramhandler.HistogramHandler;
 import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.SummarizeHandler;
 import edu.tufts.eaftan.heapviz.summarizer.AllocSiteSummarizer;
+import edu.tufts.eaftan.heapviz.summarizer.DominatorSetSummarizer;
 import edu.tufts.eaftan.heapviz.summarizer.IdentitySummarizer;
 import edu.tufts.eaftan.heapviz.summarizer.Softvis2010Summarizer;
 import edu.tufts.eaftan.heapviz.summarizer.Summarizer;
 import edu.tufts.eaftan.heapviz.summarizer.TypeGraphSummarizer;
+import edu.tufts.eaftan.heapviz.util.MappedDataInput;
 import edu.tufts.eaftan.hprofparser.handler.RecordHandler;
 import edu.tufts.eaftan.hprofparser.parser.HprofParser;
 
@@ -37,7 +42,7 @@ public class Parse {
   public static void main(String[] args) {
 
     String inputfile;
-    boolean doSummary = true, printDomEdges = true, printPtrEdges = true;
+    boolean doSummary = true, printDomEdges = false, printPtrEdges = true;
     int i;
 
 
@@ -78,48 +83,141 @@ public class Parse {
 
     Map<String,String> argmap = parseCommandLineArgs(args);
 
+    if (argmap.containsKey("-histogram")) {
+      System.out.println("Counting instances per class; no graph will be built.");
+      parse(new HistogramHandler(), inputfile, argmap.containsKey("-mmap"));
+      return;
+    }
 
 
     System.out.println(argmap.get("-s"));
+    LinkedHashMap<String, Summarizer> summarizers = new LinkedHashMap<String, Summarizer>();
     if(argmap.get("-s") != null){
-	    if(argmap.get("-s").equals("SoftVis2010")){
-	    	System.out.println("Using SoftVis2010 summarizer.");
-	    	summarizer = new Softvis2010Summarizer();
-
-	    }
-	    else if (argmap.get("-s").equals("AllocSite")){
-	    	System.out.println("Using AllocSite summarzier.");
-	    	summarizer = new AllocSiteSummarizer();
-	    }
-	    else if (argmap.get("-s").equals("TypeGraph")){
-	    	System.out.println("Using TypeGraph summarizer.");
-	    	summarizer = new TypeGraphSummarizer();
-	    } else if (argmap.get("-s").equals("Identity")){
-	    	System.out.println("Using Identity summarizer");
-	    	summarizer = new IdentitySummarizer();
+	    for (String name : argmap.get("-s").split(",")) {
+	    	summarizers.put(name, summarizerFor(name));
 	    }
+	    summarizer = summarizers.values().iterator().next();
     }
     else{
     	System.out.println("No summarizer specified; defaulting to TypeGraph.");
     	summarizer = new TypeGraphSummarizer();
     }
 
-    RecordHandler handler = new SummarizeHandler(doSummary, printDomEdges, printPtrEdges, summarizer);
+    if (argmap.containsKey("-printEdges")) {
+      String edges = argmap.get("-printEdges");
+      if (edges.equals("pointer")) {
+        printDomEdges = false;
+        printPtrEdges = true;
+      } else if (edges.equals("ownership")) {
+        printDomEdges = true;
+        printPtrEdges = false;
+      } else if (edges.equals("both")) {
+        printDomEdges = true;
+        printPtrEdges = true;
+      } else {
+        System.err.println("Unrecognized option: -printEdges=" + edges);
+        System.err.println("Usage: java Parser [-printEdges={pointer,ownership,both}] inputfile");
+        System.exit(1);
+      }
+      System.out.println("Printing " + edges + " edges.");
+    }
+
+    SummarizeHandler handler = new SummarizeHandler(doSummary, printDomEdges, printPtrEdges, summarizer);
+    if (summarizers.size() > 1) {
+      handler.setSummarizers(summarizers);
+    }
+    if (argmap.containsKey("-primArrayPreview")) {
+      int preview = 0;
+      try {
+        preview = Integer.parseInt(argmap.get("-primArrayPreview"));
+      } catch (NumberFormatException e) {
+        preview = -1;
+      }
+      if (preview < 0) {
+        System.err.println("Invalid primitive array preview: " + argmap.get("-primArrayPreview"));
+        System.exit(1);
+      }
+      System.out.println("Keeping at most " + preview + " elements of each primitive array.");
+      handler.setPrimArrayPreview(preview);
+    }
+    if (argmap.containsKey("-threads")) {
+      int threads = 0;
+      try {
+        threads = Integer.parseInt(argmap.get("-threads"));
+      } catch (NumberFormatException e) {
+        threads = 0;
+      }
+      if (threads < 1) {
+        System.err.println("Invalid number of threads: " + argmap.get("-threads"));
+        System.exit(1);
+      }
+      System.out.println("Traversing the heap with " + threads + " threads.");
+      handler.setNumThreads(threads);
+    }
+    parse(handler, inputfile, argmap.containsKey("-mmap"));
+
+  }
+
+  /**
+   * Parse the heap dump, passing its records to the handler
+   *
+   * @param handler The handler for the records
+   * @param inputfile The heap dump file
+   * @param mmap Whether to read the file through a memory mapping
+   */
+  private static void parse(RecordHandler handler, String inputfile, boolean mmap) {
     HprofParser parser = new HprofParser(handler);
 
     try {
-      FileInputStream fs = new FileInputStream(inputfile);
-      DataInputStream in = new DataInputStream(new BufferedInputStream(fs));
+      if (mmap) {
+        System.out.println("Reading heap dump through a memory-mapped file.");
+        MappedDataInput in = new MappedDataInput(new File(inputfile));
+        if (handler instanceof SummarizeHandler) {
+          ((SummarizeHandler) handler).setMappedInput(in);
+        }
 
-      parser.parse(in);
+        parser.parse(in);
 
-      in.close();
+        in.close();
+      } else {
+        FileInputStream fs = new FileInputStream(inputfile);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(fs));
+
+        parser.parse(in);
+
+        in.close();
+      }
     } catch (IOException e) {
       System.out.println("Error: " + e);
     }
 
   }
 
+  /**
+   * Get the summarizer with the given name, exiting if there is none
+   */
+  private static Summarizer summarizerFor(String name) {
+    if (name.equals("SoftVis2010")) {
+      System.out.println("Using SoftVis2010 summarizer.");
+      return new Softvis2010Summarizer();
+    } else if (name.equals("AllocSite")) {
+      System.out.println("Using AllocSite summarizer.");
+      return new AllocSiteSummarizer();
+    } else if (name.equals("TypeGraph")) {
+      System.out.println("Using TypeGraph summarizer.");
+      return new TypeGraphSummarizer();
+    } else if (name.equals("DominatorSet")) {
+      System.out.println("Using DominatorSet summarizer.");
+      return new DominatorSetSummarizer();
+    } else if (name.equals("Identity")) {
+      System.out.println("Using Identity summarizer.");
+      return new IdentitySummarizer();
+    }
+    System.err.println("Unknown summarizer: " + name);
+    System.exit(1);
+    return null;
+  }
+
   private static HashMap<String,String> parseCommandLineArgs(String[] args){
 	    HashMap<String,String> argMap = new HashMap<String,String>();
 
@@ -127,6 +225,21 @@ public class Parse {
 	      if(args[i].equals("-s")){
 	        argMap.put("-s", args[++i]);
 	      }
+	      else if(args[i].equals("-primArrayPreview")){
+	        argMap.put("-primArrayPreview", args[++i]);
+	      }
+	      else if(args[i].equals("-threads")){
+	        argMap.put("-threads", args[++i]);
+	      }
+	      else if(args[i].equals("-mmap")){
+	        argMap.put("-mmap", "true");
+	      }
+	      else if(args[i].equals("-histogram")){
+	        argMap.put("-histogram", "true");
+	      }
+	      else if(args[i].startsWith("-printEdges=")){
+	        argMap.put("-printEdges", args[i].substring(12));
+	      }
 	      else{
 	        //TODO: Throw some kinda exception...
 	      }
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/****************************************************************************
+ * This file counts the instances of each class and their shallow size as
+ * the heap dump is parsed, without storing any instances or building a
+ * graph, and outputs a histogram sorted by size at the end of each heap
+ * dump.
+ ****************************************************************************/
+
+package edu.tufts.eaftan.heapviz.analzyer.histogramhandler;
+
+import java.io.*;
+import java.util.*;
+
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Render;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.*;
+import edu.tufts.eaftan.hprofparser.handler.NullRecordHandler;
+
+public class HistogramHandler extends NullRecordHandler {
+
+  /**
+   * The counts and sizes for one class
+   */
+  static class ClassStats {
+
+    String className;
+
+    /**
+     * Size of an instance, from the class dump, or 0 for array classes
+     */
+    int instanceSize;
+
+    long count;
+
+    /**
+     * Total size of the elements of all arrays of this class
+     */
+    long elementBytes;
+
+    ClassStats(String className) {
+      this.className = className;
+    }
+
+    long shallowBytes() {
+      return count * instanceSize + elementBytes;
+    }
+
+  }
+
+  /* Instance variables */
+
+  /**
+   * Size of an object reference in the heap dump
+   */
+  private int idSize = 4;
+
+  /**
+   * Maps object IDs to strings
+   */
+  private HashMap<Long, String> stringMap = new HashMap<Long, String>();
+
+  /**
+   * Maps class object IDs to the stats for instances and object arrays of
+   * that class
+   */
+  private HashMap<Long, ClassStats> classStats = new HashMap<Long, ClassStats>();
+
+  /**
+   * Stats for primitive arrays, indexed by HPROF element type
+   */
+  private ClassStats[] primArrayStats = new ClassStats[Byte.MAX_VALUE + 1];
+
+  /**
+   * The number of heap dumps seen so far
+   */
+  private int numHeapDumps = 0;
+
+
+  /* Handlers for top-level records */
+
+  public void header(String format, int idSize, long time) {
+    this.idSize = idSize;
+  }
+
+  public void stringInUTF8(long id, String data) {
+    stringMap.put(id, data);
+  }
+
+  public void loadClass(int classSerialNum, long classObjId,
+      int stackTraceSerialNum, long classNameStringId) {
+    ClassStats stats = statsFor(classObjId);
+    stats.className = stringMap.get(classNameStringId);
+  }
+
+
+  /* Handlers for heap dump records */
+
+  public void classDump(long classObjId, int stackTraceSerialNum,
+      long superClassObjId, long classLoaderObjId, long signersObjId,
+      long protectionDomainObjId, long reserved1, long reserved2,
+      int instanceSize, Constant[] constants, Static[] statics,
+      InstanceField[] instanceFields) {
+    statsFor(classObjId).instanceSize = instanceSize;
+  }
+
+  public void instanceDump(long objId, int stackTraceSerialNum,
+      long classObjId, Value<?>[] instanceFieldValues) {
+    statsFor(classObjId).count++;
+  }
+
+  public void objArrayDump(long objId, int stackTraceSerialNum,
+      long elemClassObjId, long[] elems) {
+    ClassStats stats = statsFor(elemClassObjId);
+    stats.count++;
+    stats.elementBytes += (long) elems.length * idSize;
+  }
+
+  public void primArrayDump(long objId, int stackTraceSerialNum,
+      byte elemType, Value<?>[] elems) {
+    Type type = Type.hprofTypeToEnum(elemType);
+    if (type == null) {
+      System.err.println("Error: unknown primitive array type " + elemType);
+      System.exit(1);
+    }
+    ClassStats stats = primArrayStats[elemType];
+    if (stats == null) {
+      stats = new ClassStats(type.toString() + "[]");
+      primArrayStats[elemType] = stats;
+    }
+    stats.count++;
+    stats.elementBytes += (long) elems.length * type.sizeInBytes();
+  }
+
+  /**
+   * Called at the end of a heap dump record.  Output the histogram for this
+   * heap dump and reset the counts for the next one.
+   */
+  public void heapDumpEnd() {
+    String path = Render.dispDir + "histogram" + numHeapDumps++ + ".txt";
+    try {
+      BufferedWriter out = new BufferedWriter(new FileWriter(path));
+      try {
+        writeHistogram(out);
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      System.err.println("Unable to write histogram: " + e);
+      System.exit(1);
+    }
+
+    for (ClassStats stats : classStats.values()) {
+      stats.count = 0;
+      stats.elementBytes = 0;
+    }
+    Arrays.fill(primArrayStats, null);
+  }
+
+  /**
+   * Write the histogram for the current heap dump, largest classes first
+   */
+  void writeHistogram(Writer out) throws IOException {
+    ArrayList<ClassStats> rows = new ArrayList<ClassStats>();
+    for (ClassStats stats : classStats.values()) {
+      if (stats.count > 0) {
+        rows.add(stats);
+      }
+    }
+    for (ClassStats stats : primArrayStats) {
+      if (stats != null) {
+        rows.add(stats);
+      }
+    }
+    Collections.sort(rows, new Comparator<ClassStats>() {
+      @Override
+      public int compare(ClassStats a, ClassStats b) {
+        int c = Long.compare(b.shallowBytes(), a.shallowBytes());
+        if (c == 0) {
+          c = Long.compare(b.count, a.count);
+        }
+        if (c == 0) {
+          c = a.className.compareTo(b.className);
+        }
+        return c;
+      }
+    });
+
+    long totalCount = 0, totalBytes = 0;
+    out.write(String.format("%6s %14s %16s  %s%n", "num", "#instances", "#bytes", "class name"));
+    out.write(String.format("---------------------------------------------------------%n"));
+    for (int i=0; i<rows.size(); i++) {
+      ClassStats stats = rows.get(i);
+      out.write(String.format("%5d: %14d %16d  %s%n", i + 1, stats.count,
+          stats.shallowBytes(), stats.className));
+      totalCount += stats.count;
+      totalBytes += stats.shallowBytes();
+    }
+    out.write(String.format("%6s %14d %16d%n", "Total", totalCount, totalBytes));
+  }
+
+  /* Private methods */
+
+  /**
+   * Get the stats for a class, creating them if this is the first time the
+   * class is seen
+   */
+  private ClassStats statsFor(long classObjId) {
+    ClassStats stats = classStats.get(classObjId);
+    if (stats == null) {
+      stats = new ClassStats("unknown class " + classObjId);
+      classStats.put(classObjId, stats);
+    }
+    return stats;
+  }
+
+}
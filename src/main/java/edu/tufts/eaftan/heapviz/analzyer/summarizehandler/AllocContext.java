@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/************************************************************************
+ * An allocation context shared by all the vertices allocated from the
+ * same stack trace.  Contexts are interned by the SummarizeHandler, so two
+ * vertices have the same allocation context exactly when they refer to the
+ * same AllocContext, and the contexts can be compared by id.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import edu.tufts.eaftan.heapviz.util.XMLSanitizer;
+
+public class AllocContext {
+
+  /**
+   * A small identifier for this context, unique among the contexts
+   * created by one handler
+   */
+  public final int id;
+
+  /**
+   * The stack trace in text format, as produced by StackTrace.toString()
+   */
+  public final String text;
+
+  /**
+   * The text, sanitized and escaped for GraphML.  Computed when first needed.
+   */
+  private String graphML = null;
+
+  public AllocContext(int id, String text) {
+    this.id = id;
+    this.text = text;
+  }
+
+  /**
+   * Get the text of this context, ready to be written into a GraphML file
+   */
+  public String toGraphML() {
+    if (graphML == null) {
+      graphML = XMLSanitizer.escape(XMLSanitizer.sanitize(text));
+    }
+    return graphML;
+  }
+
+  @Override
+  public String toString() {
+    return text;
+  }
+
+}
@@ -57,10 +57,9 @@ public class Analysis {
       changed = false;
       Set<Vertex> vertices = g.getVertices();
       for (Vertex v : vertices) {
-        List<Edge<Vertex, String>> outEdges = g.getOutgoingEdges(v);
-        
         // children
-        for (Edge<Vertex, String> e : outEdges) {
+        for (int i = 0; i < g.getOutDegree(v); i++) {
+          Edge<Vertex, String> e = g.getOutgoingEdge(v, i);
           if (!e.from.equals(e.to)) {   // skip self edges
             if (e.to.repType.equals(v.repType)) {
               // same type
@@ -99,7 +98,10 @@ public class Analysis {
      */
     HashMap<Set<Vertex>, ArrayList<Vertex>> data = new HashMap<Set<Vertex>, ArrayList<Vertex>>();
     for (Vertex v : g.getVertices()) {
-      Set<Vertex> ps = g.getPredecessors(v);
+      HashSet<Vertex> ps = new HashSet<Vertex>(g.getInDegree(v) * 2);
+      for (int i = 0; i < g.getInDegree(v); i++) {
+        ps.add(g.getIncomingEdge(v, i).from);
+      }
       ArrayList<Vertex> list = data.get(ps);
       if (list == null) {
         list = new ArrayList<Vertex>();
@@ -159,22 +161,24 @@ public class Analysis {
   public static void mergeVertices(Graph<Vertex, String> g, List<Vertex> vertices) {
     
     // create new summary vertex
-    Vertex newVertex = Vertex.merge(vertices);
+    Vertex newVertex = Vertex.merge(vertices, g.getIdAllocator());
 
     // find all predecessors and successors of the new vertex
     // TODO: what to do with self edges?  right now we're deleting them
     HashSet<Vertex> preds = new HashSet<Vertex>();
     HashSet<Vertex> succs = new HashSet<Vertex>();
     for (Vertex v : vertices) {
-      List<Edge<Vertex, String>> edges = g.getEdges(v);
-      for (Edge<Vertex, String> e : edges) {
-        if (e.from.equals(v) && !vertices.contains(e.to)) {
-          // outgoing
-          succs.add(e.to);
-        } else if (e.to.equals(v) && !vertices.contains(e.from)) {
-          // incoming
-          preds.add(e.from);
-        } 
+      for (int i = 0; i < g.getOutDegree(v); i++) {
+        Vertex to = g.getOutgoingEdge(v, i).to;
+        if (!vertices.contains(to)) {
+          succs.add(to);
+        }
+      }
+      for (int i = 0; i < g.getInDegree(v); i++) {
+        Vertex from = g.getIncomingEdge(v, i).from;
+        if (!vertices.contains(from)) {
+          preds.add(from);
+        }
       }
       g.removeVertex(v);
     }
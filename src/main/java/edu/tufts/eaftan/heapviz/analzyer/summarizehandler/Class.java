@@ -28,4 +28,10 @@ public class Class {
   public int instanceSize;
   public InstanceField[] instanceFields;
 
+  /**
+   * The flattened field layout, or null if it has not been computed yet.
+   * See FieldLayout.of().
+   */
+  public FieldLayout layout;
+
 }
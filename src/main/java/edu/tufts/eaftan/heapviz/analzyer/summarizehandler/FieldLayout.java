@@ -0,0 +1,132 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/************************************************************************
+ * The flattened field layout of a class: where each field of an instance
+ * lives in its payload, for the class and all its superclasses.  Computing
+ * this once per class saves walking the superclass chain and looking up
+ * field names for every instance.
+ *
+ * Fields are listed in payload order, which is the order the fields are
+ * declared, starting with the class itself and then walking up the
+ * superclass chain.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import java.util.Map;
+
+import edu.tufts.eaftan.hprofparser.parser.datastructures.InstanceField;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Type;
+
+public class FieldLayout {
+
+  /**
+   * The number of fields, including inherited ones
+   */
+  public final int numFields;
+
+  /* Payload offsets and names of the reference fields */
+  public final int[] refOffsets;
+  public final String[] refNames;
+
+  /* Payload offsets, types and names of the primitive fields */
+  public final int[] primOffsets;
+  public final Type[] primTypes;
+  public final String[] primNames;
+
+  private FieldLayout(int numFields, int[] refOffsets, String[] refNames,
+      int[] primOffsets, Type[] primTypes, String[] primNames) {
+    this.numFields = numFields;
+    this.refOffsets = refOffsets;
+    this.refNames = refNames;
+    this.primOffsets = primOffsets;
+    this.primTypes = primTypes;
+    this.primNames = primNames;
+  }
+
+  /**
+   * Get the layout of a class, computing it the first time it is needed.
+   * Layouts are immutable, so if two threads race to compute one, either
+   * result may be kept.
+   *
+   * @param cls The class whose instances we want to read
+   * @param classIdMap Maps class object ids to classes, to find superclasses
+   * @param stringMap Maps string ids to strings, to find field names
+   * @param instanceStore The store the instances' payloads are in, which
+   *                      decides how many bytes each field takes
+   */
+  public static FieldLayout of(Class cls, Map<Long, Class> classIdMap,
+      Map<Long, String> stringMap, InstanceStore instanceStore) {
+    FieldLayout layout = cls.layout;
+    if (layout != null) {
+      return layout;
+    }
+
+    int numFields = 0;
+    int numRefs = 0;
+    // superclass of Object is 0
+    long nextClass = cls.classObjId;
+    while (nextClass != 0) {
+      Class ci = classIdMap.get(nextClass);
+      nextClass = ci.superClassObjId;
+      if (ci.instanceFields != null) {
+        for (InstanceField field : ci.instanceFields) {
+          numFields++;
+          if (field.type == Type.OBJ) {
+            numRefs++;
+          }
+        }
+      }
+    }
+
+    int[] refOffsets = new int[numRefs];
+    String[] refNames = new String[numRefs];
+    int[] primOffsets = new int[numFields - numRefs];
+    Type[] primTypes = new Type[numFields - numRefs];
+    String[] primNames = new String[numFields - numRefs];
+    int r = 0;
+    int p = 0;
+    int offset = 0;
+    nextClass = cls.classObjId;
+    while (nextClass != 0) {
+      Class ci = classIdMap.get(nextClass);
+      nextClass = ci.superClassObjId;
+      if (ci.instanceFields != null) {
+        for (InstanceField field : ci.instanceFields) {
+          String fieldName = stringMap.get(field.fieldNameStringId);
+          if (field.type == Type.OBJ) {
+            refOffsets[r] = offset;
+            refNames[r] = fieldName;
+            r++;
+          } else {
+            primOffsets[p] = offset;
+            primTypes[p] = field.type;
+            primNames[p] = fieldName;
+            p++;
+          }
+          offset += instanceStore.sizeOf(field.type);
+        }
+      }
+    }
+
+    layout = new FieldLayout(numFields, refOffsets, refNames, primOffsets,
+        primTypes, primNames);
+    cls.layout = layout;
+    return layout;
+  }
+
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes text to a file channel as UTF-8, through one large buffer that is
+ * reused for the whole file.  GraphML is appended to it piece by piece, so
+ * no String is built for each node and the document is never held in
+ * memory.  The buffer is only written out between characters, so each
+ * write to the channel is complete UTF-8.
+ */
+public class GraphMLWriter implements Closeable {
+
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Room for the longest encoding of one character or number
+   */
+  private static final int MAX_ITEM_SIZE = 20;
+
+  private final WritableByteChannel channel;
+
+  private final byte[] bytes = new byte[BUFFER_SIZE];
+  private final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+  /**
+   * The number of bytes in the buffer
+   */
+  private int pos = 0;
+
+  public GraphMLWriter(WritableByteChannel channel) {
+    this.channel = channel;
+  }
+
+  public GraphMLWriter append(String s) throws IOException {
+    int length = s.length();
+    for (int i = 0; i < length; i++) {
+      if (pos + MAX_ITEM_SIZE > bytes.length) {
+        flush();
+      }
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        bytes[pos++] = (byte) c;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, s.charAt(++i));
+        bytes[pos++] = (byte) (0xf0 | (codePoint >>> 18));
+        bytes[pos++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3f));
+        bytes[pos++] = (byte) (0x80 | (codePoint & 0x3f));
+      } else {
+        putChar(c);
+      }
+    }
+    return this;
+  }
+
+  public GraphMLWriter append(char c) throws IOException {
+    if (pos + MAX_ITEM_SIZE > bytes.length) {
+      flush();
+    }
+    putChar(c);
+    return this;
+  }
+
+  public GraphMLWriter append(long n) throws IOException {
+    if (pos + MAX_ITEM_SIZE > bytes.length) {
+      flush();
+    }
+    if (n == Long.MIN_VALUE) {
+      return append(Long.toString(n));
+    }
+    if (n < 0) {
+      bytes[pos++] = '-';
+      n = -n;
+    }
+
+    // write the digits backwards, then reverse them
+    int start = pos;
+    do {
+      bytes[pos++] = (byte) ('0' + (n % 10));
+      n /= 10;
+    } while (n != 0);
+    for (int i = start, j = pos - 1; i < j; i++, j--) {
+      byte b = bytes[i];
+      bytes[i] = bytes[j];
+      bytes[j] = b;
+    }
+    return this;
+  }
+
+  public GraphMLWriter append(boolean b) throws IOException {
+    return append(b ? "true" : "false");
+  }
+
+  /**
+   * Write out everything appended so far
+   */
+  public void flush() throws IOException {
+    buffer.clear();
+    buffer.limit(pos);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    pos = 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Encode a character from the Basic Multilingual Plane.  Unpaired
+   * surrogates cannot be encoded, and are written as '?'.
+   */
+  private void putChar(char c) {
+    if (c < 0x80) {
+      bytes[pos++] = (byte) c;
+    } else if (c < 0x800) {
+      bytes[pos++] = (byte) (0xc0 | (c >>> 6));
+      bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+    } else if (Character.isSurrogate(c)) {
+      bytes[pos++] = '?';
+    } else {
+      bytes[pos++] = (byte) (0xe0 | (c >>> 12));
+      bytes[pos++] = (byte) (0x80 | ((c >>> 6) & 0x3f));
+      bytes[pos++] = (byte) (0x80 | (c & 0x3f));
+    }
+  }
+
+}
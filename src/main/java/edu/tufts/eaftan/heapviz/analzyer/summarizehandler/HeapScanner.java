@@ -0,0 +1,104 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/************************************************************************
+ * Finds the references held by an object in the instance store.  Field
+ * values and array elements are read straight from the payload bytes (the
+ * mapped heap dump, if we have one) as we scan, rather than being decoded
+ * into Values up front.
+ *
+ * A scanner only reads the instance store and class info, so one scanner
+ * can be shared by several threads once parsing is finished.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import java.util.Map;
+
+
+class HeapScanner {
+
+  /**
+   * Receives the references found by a scan
+   */
+  interface ReferenceVisitor {
+
+    /**
+     * Called for each non-null reference to an object or class in the store
+     *
+     * @param from The instance store index of the object being scanned
+     * @param to The instance store index of the referenced object
+     * @param label The field name, or the array index for array elements
+     */
+    void reference(int from, int to, String label);
+
+  }
+
+  private InstanceStore instanceStore;
+  private Map<Long, Class> classIdMap;
+  private Map<Long, String> stringMap;
+
+  HeapScanner(InstanceStore instanceStore, Map<Long, Class> classIdMap,
+      Map<Long, String> stringMap) {
+    this.instanceStore = instanceStore;
+    this.classIdMap = classIdMap;
+    this.stringMap = stringMap;
+  }
+
+  /**
+   * Report every reference held by an object.  References to ids that are
+   * neither instances nor classes are skipped.
+   *
+   * @param index The instance store index of the object to scan
+   * @param visitor Receives the references
+   */
+  void scan(int index, ReferenceVisitor visitor) {
+    if (instanceStore.kind(index) == InstanceStore.OBJECT_INSTANCE) {
+      Class cls = classIdMap.get(instanceStore.classId(index));
+      assert(cls != null);
+
+      int length = instanceStore.length(index);
+      if (length >= 0) {
+        FieldLayout layout = FieldLayout.of(cls, classIdMap, stringMap, instanceStore);
+        if (layout.numFields != length) {
+          System.err.println("Error in object instance");
+          System.exit(1);
+        }
+        int[] refOffsets = layout.refOffsets;
+        for (int i=0; i<refOffsets.length; i++) {
+          long ref = instanceStore.readRef(index, refOffsets[i]);
+          int refIndex = ref == 0 ? -1 : instanceStore.indexOf(ref);
+          if (refIndex >= 0) {   // reference is non-null and valid
+            visitor.reference(index, refIndex, layout.refNames[i]);
+          }
+        }
+      }
+
+    } else if (instanceStore.kind(index) == InstanceStore.OBJECT_ARRAY) {
+
+      int length = instanceStore.length(index);
+      for (int i=0; i<length; i++) {
+        long ref = instanceStore.readElem(index, i);
+        int refIndex = ref == 0 ? -1 : instanceStore.indexOf(ref);
+        if (refIndex >= 0) {
+          // use array index as edge label
+          visitor.reference(index, refIndex, Long.toString(i));
+        }
+      }
+    }
+  }
+
+}
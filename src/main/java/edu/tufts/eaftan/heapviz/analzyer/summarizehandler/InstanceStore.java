@@ -0,0 +1,655 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/****************************************************************************
+ * Stores every instance in a heap dump without allocating an object per
+ * instance.  Object ids are kept in an open-addressing hash table of
+ * primitive ints, and the per-instance data lives in parallel arrays indexed
+ * by the order in which instances were added.  Field values and array
+ * elements are encoded into a ByteArena, and each record keeps only the
+ * offset of its payload.  When the heap dump is read through a
+ * MappedDataInput, nothing is copied at all: the payload offset points at
+ * the record's bytes in the mapped file.
+ *
+ * Class objects are given records as well, without a payload, so that the
+ * record index is a dense ordinal for every object id in the heap dump.
+ *
+ * Instance objects are materialized on demand by get(), so the code that
+ * builds the graph can keep working with ObjectInstance, ObjectArray and
+ * PrimArray.
+ ****************************************************************************/
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+import edu.tufts.eaftan.heapviz.util.ByteArena;
+import edu.tufts.eaftan.heapviz.util.ByteSource;
+import edu.tufts.eaftan.heapviz.util.MappedDataInput;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.InstanceField;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Type;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Value;
+
+public class InstanceStore {
+
+  public static final byte OBJECT_INSTANCE = 1;
+  public static final byte OBJECT_ARRAY = 2;
+  public static final byte PRIM_ARRAY = 3;
+  public static final byte CLASS_OBJECT = 4;
+
+  /**
+   * Element limit meaning that primitive arrays are kept in full
+   */
+  public static final int ALL_ELEMENTS = -1;
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * Object references are stored as full 8-byte ids in the arena,
+   * regardless of the id size of the heap dump
+   */
+  private static final int ARENA_REF_SIZE = 8;
+
+  /**
+   * Open-addressing hash table.  Each slot holds the index of a record plus
+   * one, or zero if the slot is empty.
+   */
+  private int[] table;
+
+  /**
+   * Number of records in the store
+   */
+  private int size;
+
+  /* Parallel arrays of record fields, indexed by record number */
+  private long[] objIds;
+  private byte[] kinds;
+
+  /**
+   * Class object id for object instances, element class object id for object
+   * arrays, and the HPROF element type for primitive arrays
+   */
+  private long[] classIds;
+  private int[] stackTraceSerialNums;
+  private long[] payloadOffsets;
+
+  /**
+   * Number of field values or array elements, -1 if the payload was null
+   */
+  private int[] payloadLengths;
+
+  /**
+   * Encoded field values and array elements, used when the heap dump is
+   * not memory-mapped
+   */
+  private ByteArena arena = new ByteArena();
+
+  /**
+   * The heap dump being parsed, or null if payloads are copied into the arena
+   */
+  private MappedDataInput input = null;
+
+  /**
+   * Maximum number of primitive array elements copied into the arena, or
+   * ALL_ELEMENTS.  The length of the array is always recorded in full.
+   */
+  private int primArrayElemLimit = ALL_ELEMENTS;
+
+  /**
+   * Where payload offsets point: either the arena or the mapped heap dump
+   */
+  private ByteSource payloads = arena;
+
+  /**
+   * Class info used to find the types of instance field values
+   */
+  private Map<Long, Class> classIdMap;
+
+  public InstanceStore(Map<Long, Class> classIdMap) {
+    this.classIdMap = classIdMap;
+    clear();
+  }
+
+  /**
+   * Read payloads directly from the mapped heap dump instead of copying them.
+   * The parser must be reading from the same input, and each put must be
+   * called right after its record has been read, so that the payload ends
+   * at the current position of the input.  The payload's offset is worked
+   * out from that position and the size of the values, so each put checks
+   * that the sub-record header in front of the payload holds the id,
+   * stack trace serial number, class or element type, and length that it
+   * was given.  If the parser has read anything in between, it throws an
+   * IllegalStateException rather than decode the wrong bytes later.
+   *
+   * @param input The mapped heap dump the parser is reading
+   */
+  public void setMappedInput(MappedDataInput input) {
+    Preconditions.checkState(size == 0, "Input must be set before instances are added");
+    this.input = input;
+    this.payloads = input;
+  }
+
+  /**
+   * Copy at most the first limit elements of each primitive array into the
+   * arena.  The rest of the array is dropped, but its length is still
+   * recorded, so the size of the array is known.  Has no effect on mapped
+   * heap dumps, where the elements are never copied.
+   *
+   * @param limit The number of elements to keep, or ALL_ELEMENTS
+   */
+  public void setPrimArrayElemLimit(int limit) {
+    Preconditions.checkState(size == 0, "Limit must be set before instances are added");
+    this.primArrayElemLimit = limit;
+  }
+
+  /**
+   * Get the number of records (instances and class objects) in the store
+   */
+  public int size() {
+    return size;
+  }
+
+  public boolean contains(long objId) {
+    return indexOf(objId) >= 0;
+  }
+
+  /**
+   * Add an object instance to the store
+   *
+   * @return True if the instance was added, false if the id was already present
+   */
+  public boolean putInstance(long objId, int stackTraceSerialNum,
+      long classObjId, Value<?>[] instanceFieldValues) {
+    if (contains(objId)) {
+      return false;
+    }
+    int length = -1;
+    long offset = arena.size();
+    if (instanceFieldValues != null) {
+      length = instanceFieldValues.length;
+      if (input != null) {
+        long bytes = 0;
+        for (Value<?> value : instanceFieldValues) {
+          bytes += encodedSize(value.type);
+        }
+        offset = input.position() - bytes;
+        // id objId, u4 serial, id classObjId, u4 number of bytes, values
+        long header = offset - 8 - 2 * refSize();
+        checkMappedRecord(header >= 0 && refAt(header) == objId
+            && payloads.getInt(header + refSize()) == stackTraceSerialNum
+            && refAt(header + refSize() + 4) == classObjId
+            && payloads.getInt(offset - 4) == bytes, objId);
+      } else {
+        for (Value<?> value : instanceFieldValues) {
+          writeValue(value);
+        }
+      }
+    }
+    add(objId, OBJECT_INSTANCE, classObjId, stackTraceSerialNum, offset, length);
+    return true;
+  }
+
+  /**
+   * Add an object array to the store
+   *
+   * @return True if the array was added, false if the id was already present
+   */
+  public boolean putObjArray(long objId, int stackTraceSerialNum,
+      long elemClassObjId, long[] elems) {
+    if (contains(objId)) {
+      return false;
+    }
+    int length = -1;
+    long offset = arena.size();
+    if (elems != null) {
+      length = elems.length;
+      if (input != null) {
+        offset = input.position() - (long) length * refSize();
+        // id objId, u4 serial, u4 length, id elemClassObjId, elements
+        long header = offset - 8 - 2 * refSize();
+        checkMappedRecord(header >= 0 && refAt(header) == objId
+            && payloads.getInt(header + refSize()) == stackTraceSerialNum
+            && payloads.getInt(header + refSize() + 4) == length
+            && refAt(offset - refSize()) == elemClassObjId, objId);
+      } else {
+        for (long elem : elems) {
+          arena.putLong(elem);
+        }
+      }
+    }
+    add(objId, OBJECT_ARRAY, elemClassObjId, stackTraceSerialNum, offset, length);
+    return true;
+  }
+
+  /**
+   * Add a primitive array to the store
+   *
+   * @return True if the array was added, false if the id was already present
+   */
+  public boolean putPrimArray(long objId, int stackTraceSerialNum,
+      byte elemType, Value<?>[] elems) {
+    if (contains(objId)) {
+      return false;
+    }
+    int length = -1;
+    long offset = arena.size();
+    if (elems != null) {
+      length = elems.length;
+      if (input != null) {
+        Type type = Type.hprofTypeToEnum(elemType);
+        offset = input.position() - (long) length * encodedSize(type);
+        // id objId, u4 serial, u4 length, u1 elemType, elements
+        long header = offset - 9 - refSize();
+        checkMappedRecord(header >= 0 && refAt(header) == objId
+            && payloads.getInt(header + refSize()) == stackTraceSerialNum
+            && payloads.getInt(header + refSize() + 4) == length
+            && payloads.getByte(offset - 1) == elemType, objId);
+      } else {
+        int kept = length;
+        if (primArrayElemLimit != ALL_ELEMENTS) {
+          kept = Math.min(length, primArrayElemLimit);
+        }
+        for (int i = 0; i < kept; i++) {
+          writeValue(elems[i]);
+        }
+      }
+    }
+    add(objId, PRIM_ARRAY, elemType, stackTraceSerialNum, offset, length);
+    return true;
+  }
+
+  /**
+   * Add a class object to the store.  Class objects have no payload; their
+   * details are kept in the class map.
+   *
+   * @return True if the class was added, false if the id was already present
+   */
+  public boolean putClass(long classObjId, int stackTraceSerialNum) {
+    if (contains(classObjId)) {
+      return false;
+    }
+    add(classObjId, CLASS_OBJECT, classObjId, stackTraceSerialNum, arena.size(), -1);
+    return true;
+  }
+
+  /**
+   * Find the record for an object id.  The record index can be passed to the
+   * accessors below to read an instance without materializing it.
+   *
+   * @param objId The object id of the instance
+   * @return The index of the instance's record, or -1 if no instance has that id
+   */
+  public int indexOf(long objId) {
+    int mask = table.length - 1;
+    int slot = hash(objId) & mask;
+    while (table[slot] != 0) {
+      int index = table[slot] - 1;
+      if (objIds[index] == objId) {
+        return index;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /**
+   * Look up an instance by object id.  The returned Instance is a fresh
+   * copy decoded from the store; changes to it are not written back.
+   *
+   * @param objId The object id of the instance
+   * @return The instance, or null if no instance has that id
+   */
+  public Instance get(long objId) {
+    int index = indexOf(objId);
+    if (index < 0 || kinds[index] == CLASS_OBJECT) {
+      return null;
+    }
+
+    long offset = payloadOffsets[index];
+    int length = payloadLengths[index];
+    switch (kinds[index]) {
+      case OBJECT_INSTANCE: {
+        ObjectInstance obj = new ObjectInstance();
+        obj.classObjId = classIds[index];
+        if (length >= 0) {
+          obj.instanceFieldValues = readFieldValues(obj.classObjId, offset, length);
+        }
+        return fill(obj, index);
+      }
+      case OBJECT_ARRAY: {
+        ObjectArray obj = new ObjectArray();
+        obj.elemClassObjId = classIds[index];
+        if (length >= 0) {
+          obj.elems = new long[length];
+          for (int i = 0; i < length; i++) {
+            obj.elems[i] = refAt(offset + (long) i * refSize());
+          }
+        }
+        return fill(obj, index);
+      }
+      case PRIM_ARRAY: {
+        PrimArray obj = new PrimArray();
+        obj.elemType = Type.hprofTypeToEnum((byte) classIds[index]);
+        obj.length = length;
+        if (length >= 0) {
+          int kept = readableLength(index);
+          obj.elems = new Value<?>[kept];
+          for (int i = 0; i < kept; i++) {
+            obj.elems[i] = valueAt(obj.elemType, offset);
+            offset += encodedSize(obj.elemType);
+          }
+        }
+        return fill(obj, index);
+      }
+      default:
+        throw new IllegalStateException("Unknown record kind " + kinds[index]);
+    }
+  }
+
+
+
+  /* Record accessors.  Field values and array elements are decoded from the
+   * payload bytes only when they are asked for. */
+
+  public long objId(int index) {
+    return objIds[index];
+  }
+
+  /**
+   * Get the kind of a record: OBJECT_INSTANCE, OBJECT_ARRAY, PRIM_ARRAY or
+   * CLASS_OBJECT
+   */
+  public byte kind(int index) {
+    return kinds[index];
+  }
+
+  /**
+   * Get the class object id of an object instance or class object, or the
+   * element class object id of an object array
+   */
+  public long classId(int index) {
+    return classIds[index];
+  }
+
+  /**
+   * Get the element type of a primitive array
+   */
+  public Type elemType(int index) {
+    return Type.hprofTypeToEnum((byte) classIds[index]);
+  }
+
+  public int stackTraceSerialNum(int index) {
+    return stackTraceSerialNums[index];
+  }
+
+  /**
+   * Get the number of field values or array elements of a record
+   *
+   * @return The number of values, or -1 if the record had none
+   */
+  public int length(int index) {
+    return payloadLengths[index];
+  }
+
+  /**
+   * Get the number of field values or array elements of a record that can
+   * be read.  This is less than length() for primitive arrays that were cut
+   * short by the element limit.
+   */
+  public int readableLength(int index) {
+    int length = payloadLengths[index];
+    if (kinds[index] == PRIM_ARRAY && input == null
+        && primArrayElemLimit != ALL_ELEMENTS) {
+      return Math.min(length, primArrayElemLimit);
+    }
+    return length;
+  }
+
+  /**
+   * Get the number of payload bytes a value of the given type occupies
+   */
+  public int sizeOf(Type type) {
+    return encodedSize(type);
+  }
+
+  /**
+   * Read an object reference from a record's payload
+   *
+   * @param index The index of the record
+   * @param byteOffset The offset of the reference from the start of the payload
+   */
+  public long readRef(int index, long byteOffset) {
+    return refAt(payloadOffsets[index] + byteOffset);
+  }
+
+  /**
+   * Read an element of an object array
+   */
+  public long readElem(int index, int i) {
+    return refAt(payloadOffsets[index] + (long) i * refSize());
+  }
+
+  /**
+   * Read a value of the given type from a record's payload
+   *
+   * @param index The index of the record
+   * @param byteOffset The offset of the value from the start of the payload
+   * @param type The type of the value
+   */
+  public Value<?> readValue(int index, long byteOffset, Type type) {
+    return valueAt(type, payloadOffsets[index] + byteOffset);
+  }
+
+  /**
+   * Remove all instances from the store
+   */
+  public void clear() {
+    table = new int[INITIAL_CAPACITY * 2];
+    size = 0;
+    objIds = new long[INITIAL_CAPACITY];
+    kinds = new byte[INITIAL_CAPACITY];
+    classIds = new long[INITIAL_CAPACITY];
+    stackTraceSerialNums = new int[INITIAL_CAPACITY];
+    payloadOffsets = new long[INITIAL_CAPACITY];
+    payloadLengths = new int[INITIAL_CAPACITY];
+    arena.clear();
+  }
+
+
+  /* Private methods */
+
+  private Instance fill(Instance obj, int index) {
+    obj.objId = objIds[index];
+    obj.stackTraceSerialNum = stackTraceSerialNums[index];
+    return obj;
+  }
+
+  /**
+   * Decode the field values of an object instance.  Values are stored in the
+   * order the fields are declared, starting with the class itself and then
+   * walking up the superclass chain.
+   */
+  private Value<?>[] readFieldValues(long classObjId, long offset, int length) {
+    Value<?>[] values = new Value<?>[length];
+    int i = 0;
+    long nextClass = classObjId;
+    while (nextClass != 0 && i < length) {
+      Class ci = classIdMap.get(nextClass);
+      nextClass = ci.superClassObjId;
+      if (ci.instanceFields != null) {
+        for (InstanceField field : ci.instanceFields) {
+          if (i == length) {
+            break;
+          }
+          values[i++] = valueAt(field.type, offset);
+          offset += encodedSize(field.type);
+        }
+      }
+    }
+    if (i != length) {
+      System.err.println("Error in object instance");
+      System.exit(1);
+    }
+    return values;
+  }
+
+  private void add(long objId, byte kind, long classId, int stackTraceSerialNum,
+      long payloadOffset, int payloadLength) {
+    if (size == objIds.length) {
+      int newCapacity = objIds.length + (objIds.length >> 1);
+      objIds = Arrays.copyOf(objIds, newCapacity);
+      kinds = Arrays.copyOf(kinds, newCapacity);
+      classIds = Arrays.copyOf(classIds, newCapacity);
+      stackTraceSerialNums = Arrays.copyOf(stackTraceSerialNums, newCapacity);
+      payloadOffsets = Arrays.copyOf(payloadOffsets, newCapacity);
+      payloadLengths = Arrays.copyOf(payloadLengths, newCapacity);
+    }
+    // keep the table at most half full
+    if ((size + 1) * 2 > table.length) {
+      rehash(table.length * 2);
+    }
+
+    int index = size++;
+    objIds[index] = objId;
+    kinds[index] = kind;
+    classIds[index] = classId;
+    stackTraceSerialNums[index] = stackTraceSerialNum;
+    payloadOffsets[index] = payloadOffset;
+    payloadLengths[index] = payloadLength;
+    insert(table, objId, index);
+  }
+
+  private void insert(int[] t, long objId, int index) {
+    int mask = t.length - 1;
+    int slot = hash(objId) & mask;
+    while (t[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    t[slot] = index + 1;
+  }
+
+  private void rehash(int newCapacity) {
+    int[] newTable = new int[newCapacity];
+    for (int i = 0; i < size; i++) {
+      insert(newTable, objIds[i], i);
+    }
+    table = newTable;
+  }
+
+  /**
+   * Object ids are addresses, so the low bits are mostly zero.  Mix all the
+   * bits before masking.
+   */
+  private static int hash(long objId) {
+    long h = objId * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  /**
+   * Get the size of a reference in the payload bytes.  Mapped heap dumps use
+   * the identifier size from the file header.
+   */
+  /**
+   * Fail if the header of a record read from the mapped input does not
+   * match what the parser reported, which means the payload does not end
+   * at the current position of the input
+   */
+  private static void checkMappedRecord(boolean headerMatches, long objId) {
+    Preconditions.checkState(headerMatches,
+        "Record for object %s does not end at the position of the mapped input", objId);
+  }
+
+  private int refSize() {
+    return input == null ? ARENA_REF_SIZE : Type.OBJ.sizeInBytes();
+  }
+
+  private int encodedSize(Type type) {
+    return type == Type.OBJ ? refSize() : type.sizeInBytes();
+  }
+
+  /**
+   * Read an object reference.  4-byte identifiers are sign-extended, which
+   * is how the parser widens them to longs, so that decoded references match
+   * the object ids it reports.
+   */
+  private long refAt(long offset) {
+    if (refSize() == 8) {
+      return payloads.getLong(offset);
+    }
+    return payloads.getInt(offset);
+  }
+
+  private void writeValue(Value<?> value) {
+    switch (value.type) {
+      case OBJ:
+        arena.putLong((Long) value.value);
+        break;
+      case BOOL:
+        arena.putByte((byte) (((Boolean) value.value) ? 1 : 0));
+        break;
+      case CHAR:
+        arena.putShort((short) ((Character) value.value).charValue());
+        break;
+      case FLOAT:
+        arena.putInt(Float.floatToRawIntBits((Float) value.value));
+        break;
+      case DOUBLE:
+        arena.putLong(Double.doubleToRawLongBits((Double) value.value));
+        break;
+      case BYTE:
+        arena.putByte((Byte) value.value);
+        break;
+      case SHORT:
+        arena.putShort((Short) value.value);
+        break;
+      case INT:
+        arena.putInt((Integer) value.value);
+        break;
+      case LONG:
+        arena.putLong((Long) value.value);
+        break;
+    }
+  }
+
+  private Value<?> valueAt(Type type, long offset) {
+    switch (type) {
+      case OBJ:
+        return new Value<Long>(type, refAt(offset));
+      case BOOL:
+        return new Value<Boolean>(type, payloads.getByte(offset) != 0);
+      case CHAR:
+        return new Value<Character>(type, (char) payloads.getShort(offset));
+      case FLOAT:
+        return new Value<Float>(type, Float.intBitsToFloat(payloads.getInt(offset)));
+      case DOUBLE:
+        return new Value<Double>(type, Double.longBitsToDouble(payloads.getLong(offset)));
+      case BYTE:
+        return new Value<Byte>(type, payloads.getByte(offset));
+      case SHORT:
+        return new Value<Short>(type, payloads.getShort(offset));
+      case INT:
+        return new Value<Integer>(type, payloads.getInt(offset));
+      case LONG:
+        return new Value<Long>(type, payloads.getLong(offset));
+      default:
+        throw new IllegalStateException("Unknown type " + type);
+    }
+  }
+
+}
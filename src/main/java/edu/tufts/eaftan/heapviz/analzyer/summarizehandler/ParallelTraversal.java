@@ -0,0 +1,218 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/************************************************************************
+ * Finds every object reachable from a set of starting objects using all
+ * the cores of the machine.  Each fork/join task scans objects from its
+ * own worklist, claims the objects they reference in a shared atomic
+ * bitset, and splits half of its worklist off into a new task when the
+ * worklist grows.  Edges are appended to a buffer owned by the worker
+ * thread, so threads never contend on them.
+ *
+ * Vertices are not created here.  The caller creates them sequentially
+ * from the reached set and then adds the buffered edges, which gives the
+ * same vertices and edges as a sequential traversal.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import edu.tufts.eaftan.heapviz.util.AtomicBitSet;
+import edu.tufts.eaftan.heapviz.util.IntStack;
+
+class ParallelTraversal {
+
+  /**
+   * The number of objects a task scans before it splits off new work
+   */
+  private static final int BATCH_SIZE = 1024;
+
+  /**
+   * The edges found by one worker thread, as parallel arrays of instance
+   * store indices and labels
+   */
+  static class EdgeBuffer {
+    int size = 0;
+    int[] from = new int[BATCH_SIZE];
+    int[] to = new int[BATCH_SIZE];
+    String[] labels = new String[BATCH_SIZE];
+
+    void add(int f, int t, String label) {
+      if (size == from.length) {
+        int newCapacity = size * 2;
+        from = Arrays.copyOf(from, newCapacity);
+        to = Arrays.copyOf(to, newCapacity);
+        labels = Arrays.copyOf(labels, newCapacity);
+      }
+      from[size] = f;
+      to[size] = t;
+      labels[size] = label;
+      size++;
+    }
+  }
+
+  private final HeapScanner scanner;
+  private final AtomicBitSet reached;
+  private final ConcurrentLinkedQueue<EdgeBuffer> buffers =
+      new ConcurrentLinkedQueue<EdgeBuffer>();
+  private final ThreadLocal<EdgeBuffer> threadBuffer = new ThreadLocal<EdgeBuffer>() {
+    @Override
+    protected EdgeBuffer initialValue() {
+      EdgeBuffer buffer = new EdgeBuffer();
+      buffers.add(buffer);
+      return buffer;
+    }
+  };
+
+  /* Tasks are never joined, since a long chain of tasks joining each other
+   * could overflow the stack.  Instead we count the tasks that have been
+   * forked but not finished, and the last one to finish releases the
+   * waiting thread.
+   */
+  private final AtomicLong pending = new AtomicLong();
+  private final CountDownLatch done = new CountDownLatch(1);
+  private final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+  /**
+   * @param scanner Finds the references held by each object
+   * @param numObjects The number of records in the instance store
+   */
+  ParallelTraversal(HeapScanner scanner, int numObjects) {
+    this.scanner = scanner;
+    this.reached = new AtomicBitSet(numObjects);
+  }
+
+  /**
+   * Find every object reachable from the starting objects.  May only be
+   * called once.
+   *
+   * @param start The instance store indices of the starting objects
+   * @param numThreads The number of worker threads to use
+   */
+  void traverse(int[] start, int numThreads) {
+    ArrayList<IntStack> batches = new ArrayList<IntStack>();
+    IntStack batch = new IntStack();
+    for (int index : start) {
+      if (reached.set(index)) {
+        batch.push(index);
+        if (batch.size() == BATCH_SIZE) {
+          batches.add(batch);
+          batch = new IntStack();
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.add(batch);
+    }
+    if (batches.isEmpty()) {
+      return;
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(numThreads);
+    try {
+      pending.set(batches.size());
+      for (IntStack work : batches) {
+        pool.execute(new ScanTask(work));
+      }
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while traversing the heap", e);
+    } finally {
+      pool.shutdownNow();
+    }
+
+    if (failure.get() != null) {
+      throw new IllegalStateException("Heap traversal failed", failure.get());
+    }
+  }
+
+  /**
+   * Get the set of reached objects.  Only valid after traverse() returns.
+   */
+  BitSet getReached() {
+    return reached.toBitSet();
+  }
+
+  /**
+   * Get the edges found by all worker threads.  Only valid after
+   * traverse() returns.
+   */
+  List<EdgeBuffer> getEdgeBuffers() {
+    return new ArrayList<EdgeBuffer>(buffers);
+  }
+
+
+  /**
+   * Scans objects until its worklist is empty, splitting half of the
+   * worklist off into a new task whenever it grows past the batch size
+   */
+  private class ScanTask extends RecursiveAction
+      implements HeapScanner.ReferenceVisitor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final IntStack work;
+    private EdgeBuffer edges;
+
+    ScanTask(IntStack work) {
+      this.work = work;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        edges = threadBuffer.get();
+        while (!work.isEmpty() && failure.get() == null) {
+          scanner.scan(work.pop(), this);
+          if (work.size() > BATCH_SIZE) {
+            IntStack half = new IntStack(BATCH_SIZE);
+            for (int i = work.size() / 2; i > 0; i--) {
+              half.push(work.pop());
+            }
+            pending.incrementAndGet();
+            new ScanTask(half).fork();
+          }
+        }
+      } catch (Throwable t) {
+        failure.compareAndSet(null, t);
+      } finally {
+        if (pending.decrementAndGet() == 0) {
+          done.countDown();
+        }
+      }
+    }
+
+    @Override
+    public void reference(int from, int to, String label) {
+      edges.add(from, to, label);
+      if (reached.set(to)) {
+        work.push(to);
+      }
+    }
+  }
+
+}
@@ -22,6 +22,13 @@ import edu.tufts.eaftan.hprofparser.parser.datastructures.Value;
 public class PrimArray extends Instance {
 
   public Type elemType;
+
+  /**
+   * The number of elements in the array, or -1 if the dump had none.  elems
+   * may hold only the first few of them if the instance store was told to
+   * drop the rest.
+   */
+  public int length;
   public Value<?>[] elems;
 
 }
@@ -17,6 +17,8 @@
 package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.*;
 
 import edu.tufts.eaftan.heapviz.util.Edge;
@@ -50,9 +52,13 @@ public class Render {
       if (extraLabel == null)
         extraLabel = "";
       File visgml = new File(dispGml.replace("$", extraLabel));
-      BufferedWriter out = new BufferedWriter(new FileWriter(visgml.getCanonicalPath()));
-      computeGraphMLString(out, g, printDomEdges, printPtrEdges);
-      out.close();
+      GraphMLWriter out = new GraphMLWriter(
+          new FileOutputStream(visgml.getCanonicalPath()).getChannel());
+      try {
+        writeGraphML(out, g, printDomEdges, printPtrEdges);
+      } finally {
+        out.close();
+      }
       return visgml.getCanonicalPath();
 
     } catch (IOException e) {
@@ -65,75 +71,122 @@ public class Render {
   }
 
   /**
-   * Compute the GraphML string for this graph.
+   * Write this graph in GraphML format to a Writer.  The Writer is flushed
+   * but not closed.
    *
-   * @return A string representing this graph in GraphML format
+   * @deprecated Use writeGraphML, which encodes straight into a file
+   * channel instead of going through a Writer
+   */
+  @Deprecated
+  public static void computeGraphMLString(final Writer out, Graph<Vertex, String> g,
+      boolean printDomEdges, boolean printPtrEdges) {
+
+    // each buffer GraphMLWriter hands over ends on a character boundary
+    GraphMLWriter gml = new GraphMLWriter(new WritableByteChannel() {
+      @Override
+      public int write(ByteBuffer src) throws IOException {
+        int length = src.remaining();
+        out.write(new String(src.array(), src.arrayOffset() + src.position(), length, "UTF-8"));
+        src.position(src.limit());
+        return length;
+      }
+
+      @Override
+      public boolean isOpen() {
+        return true;
+      }
+
+      @Override
+      public void close() {
+      }
+    });
+    writeGraphML(gml, g, printDomEdges, printPtrEdges);
+
+    try {
+      gml.flush();
+      out.flush();
+    } catch (IOException e) {
+      System.out.println("Unable to generate GraphML file: " + e);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Write this graph in GraphML format.  Each vertex's outgoing edges are
+   * written straight from its edge list, so the edge set of the graph is
+   * never built.
    */
-  public static void computeGraphMLString(Writer out, Graph<Vertex, String> g,
+  public static void writeGraphML(GraphMLWriter out, Graph<Vertex, String> g,
       boolean printDomEdges, boolean printPtrEdges) {
 
     try {
       // header
-      out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-      out.write("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\"\n");
-      out.write("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
-      out.write("xsi:schemaLocation=\"http://graphml.graphdrawing.org/xmlns\n");
-      out.write("http://graphml.graphdrawing.org/xmlns/1.0/graphml.xsd\">\n\n");
+      out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+      out.append("<graphml xmlns=\"http://graphml.graphdrawing.org/xmlns\"\n");
+      out.append("xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\"\n");
+      out.append("xsi:schemaLocation=\"http://graphml.graphdrawing.org/xmlns\n");
+      out.append("http://graphml.graphdrawing.org/xmlns/1.0/graphml.xsd\">\n\n");
 
       // data schema
-      out.write("<key id=\"type\" for=\"node\" attr.name=\"type\" attr.type=\"string\"/>\n");
-      out.write("<key id=\"members\" for=\"node\" attr.name=\"members\" attr.type=\"string\"/>\n");
-      out.write("<key id=\"count\" for=\"node\" attr.name=\"count\" attr.type=\"int\"/>\n");
-      out.write("<key id=\"size\" for=\"node\" attr.name=\"size\" attr.type=\"int\"/>\n");
-      out.write("<key id=\"types\" for=\"node\" attr.name=\"types\" attr.type=\"string\"/>\n");
-      out.write("<key id=\"allocContext\" for=\"node\" attr.name=\"allocContext\" attr.type=\"string\"/>\n");
-      out.write("<key id=\"collapsed\" for=\"node\" attr.name=\"collapsed\" attr.type=\"boolean\">\n");
-      out.write("  <default>false</default>\n");
-      out.write("</key>\n");
-
-      out.write("<key id=\"label\" for=\"edge\" attr.name=\"label\" attr.type=\"string\"/>\n");
-      out.write("<key id=\"ownership\" for=\"edge\" attr.name=\"ownership\" attr.type=\"boolean\">\n");
-      out.write("  <default>false</default>\n");
-      out.write("</key>\n");
-      out.write("<key id=\"pointer\" for=\"edge\" attr.name=\"pointer\" attr.type=\"boolean\">\n");
-      out.write("  <default>true</default>\n");
-      out.write("</key>\n\n");
+      out.append("<key id=\"type\" for=\"node\" attr.name=\"type\" attr.type=\"string\"/>\n");
+      out.append("<key id=\"members\" for=\"node\" attr.name=\"members\" attr.type=\"string\"/>\n");
+      out.append("<key id=\"count\" for=\"node\" attr.name=\"count\" attr.type=\"int\"/>\n");
+      out.append("<key id=\"size\" for=\"node\" attr.name=\"size\" attr.type=\"int\"/>\n");
+      out.append("<key id=\"retained\" for=\"node\" attr.name=\"retained\" attr.type=\"long\"/>\n");
+      out.append("<key id=\"types\" for=\"node\" attr.name=\"types\" attr.type=\"string\"/>\n");
+      out.append("<key id=\"allocContext\" for=\"node\" attr.name=\"allocContext\" attr.type=\"string\"/>\n");
+      out.append("<key id=\"collapsed\" for=\"node\" attr.name=\"collapsed\" attr.type=\"boolean\">\n");
+      out.append("  <default>false</default>\n");
+      out.append("</key>\n");
+
+      out.append("<key id=\"label\" for=\"edge\" attr.name=\"label\" attr.type=\"string\"/>\n");
+      out.append("<key id=\"ownership\" for=\"edge\" attr.name=\"ownership\" attr.type=\"boolean\">\n");
+      out.append("  <default>false</default>\n");
+      out.append("</key>\n");
+      out.append("<key id=\"pointer\" for=\"edge\" attr.name=\"pointer\" attr.type=\"boolean\">\n");
+      out.append("  <default>true</default>\n");
+      out.append("</key>\n\n");
 
 
       // start graph
-      out.write("<graph edgedefault=\"directed\">\n\n");
+      out.append("<graph edgedefault=\"directed\">\n\n");
 
       // vertices
       Set<Vertex> vertices = g.getVertices();
       for (Vertex v : vertices) {
         // TODO(eaftan): remove this check, enforce invariant that no vertices are null
         if (v != null) {
-          out.write(v.toGraphML());
+          v.toGraphML(out);
         }
       }
 
       // edges
-      Set<Edge<Vertex, String>> edges = g.getEdges();
-      for (Edge<Vertex, String> e : edges) {
-        if ((e.ownership && printDomEdges) || (e.pointer && printPtrEdges)) {
-          out.write("<edge source=\"");
-          out.write(Long.toString(e.from.id));
-          out.write("\" target=\"");
-          out.write(Long.toString(e.to.id));
-          out.write("\">\n");
-
-          out.write("  <data key=\"ownership\">");
-          out.write(String.valueOf(e.ownership));
-          out.write("</data>\n");
-
-          out.write("  <data key=\"pointer\">");
-          out.write(String.valueOf(e.pointer));
-          out.write("</data>\n");
-          out.write("</edge>\n");
+      for (Vertex v : vertices) {
+        if (v == null) {
+          continue;
+        }
+        for (int i = 0; i < g.getOutDegree(v); i++) {
+          Edge<Vertex, String> e = g.getOutgoingEdge(v, i);
+          if ((e.ownership && printDomEdges) || (e.pointer && printPtrEdges)) {
+            out.append("<edge source=\"");
+            out.append(e.from.id);
+            out.append("\" target=\"");
+            out.append(e.to.id);
+            out.append("\">\n");
+
+            out.append("  <data key=\"ownership\">");
+            out.append(e.ownership);
+            out.append("</data>\n");
+
+            out.append("  <data key=\"pointer\">");
+            out.append(e.pointer);
+            out.append("</data>\n");
+            out.append("</edge>\n");
+          }
         }
       }
 
-      out.write("</graph>\n</graphml>");
+      out.append("</graph>\n</graphml>");
     } catch (IOException e) {
       System.err.println(e);
       System.exit(1);
@@ -26,12 +26,22 @@ package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Preconditions;
 
 import edu.tufts.eaftan.heapviz.summarizer.*;
-import edu.tufts.eaftan.heapviz.util.DuplicateEdgeException;
+import edu.tufts.eaftan.heapviz.util.CompactGraph;
+import edu.tufts.eaftan.heapviz.util.DominatorTree;
 import edu.tufts.eaftan.heapviz.util.Graph;
+import edu.tufts.eaftan.heapviz.util.GraphOverlay;
+import edu.tufts.eaftan.heapviz.util.IdAllocator;
+import edu.tufts.eaftan.heapviz.util.IntStack;
+import edu.tufts.eaftan.heapviz.util.MappedDataInput;
 import edu.tufts.eaftan.hprofparser.parser.datastructures.*;
 import edu.tufts.eaftan.hprofparser.handler.NullRecordHandler;
 
@@ -56,6 +66,17 @@ public class SummarizeHandler extends NullRecordHandler {
    */
   private boolean printDomEdges;
 
+  /**
+   * How many elements of each primitive array to output as fields, or
+   * InstanceStore.ALL_ELEMENTS to output every element
+   */
+  private int primArrayPreview = InstanceStore.ALL_ELEMENTS;
+
+  /**
+   * How many threads to use to traverse the heap
+   */
+  private int numThreads = 1;
+
   /**
    * Maps object IDs to strings
    */
@@ -74,7 +95,7 @@ public class SummarizeHandler extends NullRecordHandler {
   /**
    * Maps object IDs to instance info objects
    */
-  private HashMap<Long, Instance> instanceMap = new HashMap<Long, Instance>();
+  private InstanceStore instanceStore = new InstanceStore(classIdMap);
 
   /**
    * Maps stack frame IDs to stack frame info objects
@@ -86,6 +107,17 @@ public class SummarizeHandler extends NullRecordHandler {
    */
   private HashMap<Integer, StackTrace> stackTraceMap = new HashMap<Integer, StackTrace>();
 
+  /**
+   * Maps stack trace serial numbers to interned allocation contexts
+   */
+  private HashMap<Integer, AllocContext> allocContextMap = new HashMap<Integer, AllocContext>();
+
+  /**
+   * Maps stack trace text to interned allocation contexts.  Different stack
+   * traces can print the same way, and should share a context.
+   */
+  private HashMap<String, AllocContext> allocContextTextMap = new HashMap<String, AllocContext>();
+
   /**
    * LinkedList of root references
    */
@@ -115,6 +147,17 @@ public class SummarizeHandler extends NullRecordHandler {
    */
   private Summarizer summarizer;
 
+  /**
+   * Summarizers to run side by side on each heap dump, by name, or null to
+   * run only summarizer
+   */
+  private LinkedHashMap<String, Summarizer> summarizers = null;
+
+  /**
+   * The number of heap dumps seen so far
+   */
+  private int numHeapDumps = 0;
+
 
   /* Constructors */
 
@@ -141,6 +184,63 @@ public class SummarizeHandler extends NullRecordHandler {
   }
 
 
+  /**
+   * Tell the handler that the parser is reading from a memory-mapped heap
+   * dump.  Instances then refer to their field values and array elements by
+   * offset into the mapped file instead of keeping a copy.  Must be called
+   * before parsing starts.
+   *
+   * @param input The mapped heap dump the parser is reading
+   */
+  public void setMappedInput(MappedDataInput input) {
+    instanceStore.setMappedInput(input);
+  }
+
+
+  /**
+   * Limit how much of each primitive array is kept and output.  With a
+   * preview of 0, only the element type and length of an array are kept,
+   * which is enough to compute its size.  With a positive preview, the first
+   * elements are output; char[] and byte[] arrays are output as a single
+   * "text" field rather than one field per element.  Must be called before
+   * parsing starts.
+   *
+   * @param preview The number of elements to keep, or
+   *                InstanceStore.ALL_ELEMENTS to keep them all
+   */
+  public void setPrimArrayPreview(int preview) {
+    this.primArrayPreview = preview;
+    instanceStore.setPrimArrayElemLimit(preview);
+  }
+
+
+  /**
+   * Set the number of threads used to find the reachable objects when
+   * building the graph.  With more than one thread, the objects are scanned
+   * in parallel, and the graph has the same vertices and edges as with one.
+   *
+   * @param numThreads The number of threads to use
+   */
+  public void setNumThreads(int numThreads) {
+    Preconditions.checkArgument(numThreads > 0, "Need at least one thread");
+    this.numThreads = numThreads;
+  }
+
+
+  /**
+   * Run several summarizers on each heap dump instead of the one given to
+   * the constructor.  The graph is built once, and the summarizers run in
+   * parallel on it.  Each summary is output to its own GraphML file,
+   * labelled with the number of the heap dump and the summarizer's name.
+   *
+   * @param summarizers The summarizers to run, by name
+   */
+  public void setSummarizers(Map<String, Summarizer> summarizers) {
+    Preconditions.checkArgument(!summarizers.isEmpty(), "Need at least one summarizer");
+    this.summarizers = new LinkedHashMap<String, Summarizer>(summarizers);
+  }
+
+
   /* Handlers for top-level records */
 
   /**
@@ -266,6 +366,8 @@ public class SummarizeHandler extends NullRecordHandler {
       cls.instanceSize = instanceSize;
       cls.instanceFields = instanceFields;
       cls.stackTraceSerialNum = stackTraceSerialNum;
+      cls.layout = null;
+      instanceStore.putClass(classObjId, stackTraceSerialNum);
     } else {
       System.err.println("Error: class " + classObjId + " not found");
     }
@@ -291,44 +393,18 @@ public class SummarizeHandler extends NullRecordHandler {
 
   public void instanceDump(long objId, int stackTraceSerialNum,
       long classObjId, Value<?>[] instanceFieldValues) {
-
-    if (instanceMap.get(objId) == null) {
-      ObjectInstance newInstance = new ObjectInstance();
-      newInstance.objId = objId;
-      newInstance.stackTraceSerialNum = stackTraceSerialNum;
-      newInstance.classObjId = classObjId;
-      newInstance.instanceFieldValues = instanceFieldValues;
-      instanceMap.put(objId, newInstance);
-    }
-
+    instanceStore.putInstance(objId, stackTraceSerialNum, classObjId,
+        instanceFieldValues);
   }
 
   public void objArrayDump(long objId, int stackTraceSerialNum,
       long elemClassObjId, long[] elems) {
-
-    if (instanceMap.get(objId) == null) {
-      ObjectArray newArray = new ObjectArray();
-      newArray.objId = objId;
-      newArray.stackTraceSerialNum = stackTraceSerialNum;
-      newArray.elemClassObjId = elemClassObjId;
-      newArray.elems = elems;
-      instanceMap.put(objId, newArray);
-    }
-
+    instanceStore.putObjArray(objId, stackTraceSerialNum, elemClassObjId, elems);
   }
 
   public void primArrayDump(long objId, int stackTraceSerialNum,
       byte elemType, Value<?>[] elems) {
-
-    if (instanceMap.get(objId) == null) {
-      PrimArray newArray = new PrimArray();
-      newArray.objId = objId;
-      newArray.stackTraceSerialNum = stackTraceSerialNum;
-      newArray.elemType = Type.hprofTypeToEnum(elemType);
-      newArray.elems = elems;
-      instanceMap.put(objId, newArray);
-    }
-
+    instanceStore.putPrimArray(objId, stackTraceSerialNum, elemType, elems);
   }
 
   /**
@@ -338,184 +414,287 @@ public class SummarizeHandler extends NullRecordHandler {
    */
   public void heapDumpEnd() {
 
-    Graph<Vertex, String> g = new Graph<Vertex, String>(instanceMap.size(), 10);
+    /* The graph is collected into a CompactGraph builder, which numbers the
+     * vertices in the order they are created, and is turned into a Graph
+     * in one pass once all the edges are known.
+     *
+     * Objects are identified by their index in the instance store rather
+     * than by object id while we traverse the heap.
+     */
+    int numObjects = instanceStore.size();
+    final CompactGraph.Builder builder = new CompactGraph.Builder(numObjects * 2);
+    final ArrayList<Vertex> vertices = new ArrayList<Vertex>(numObjects);
 
-    HashMap<Long, Vertex> objIdToVertex = new HashMap<Long, Vertex>(instanceMap.size());
+    // maps instance store indices to vertex numbers, -1 if not created yet
+    final int[] indexToVertex = new int[numObjects];
+    Arrays.fill(indexToVertex, -1);
 
-    // worklist of object ids of instances to process
-    Stack<Long> worklist = new Stack<Long>();
+    // worklist of instance store indices of instances to process
+    final IntStack worklist = new IntStack();
 
-    // set of visited object ids
-    HashSet<Long> visited = new HashSet<Long>(instanceMap.size());
+    // set of visited instance store indices
+    BitSet visited = new BitSet(numObjects);
 
     // create a fake root node that will point to the real roots
     Vertex root = new Vertex(0, "Fake root", 0, null);
-    g.addVertex(root);
-    g.setRoot(root);
+    int rootVertex = builder.addVertex();
+    vertices.add(root);
 
     // start at roots, push references onto worklist
     for (Root r: roots) {
       if (keepRoot(r)) {
 
         // find vertex that is target of the edge
-        Vertex target;
-        try {
-          target = findOrCreateVertex(objIdToVertex, r.targetId);
-
-          // create edge
-          /* TODO: we may want to distinguish between stack roots
-           * and static roots in edges
-           */
-          String label = null;
-          if (r instanceof RootJavaFrame) {
-            RootJavaFrame rjf = (RootJavaFrame)r;
-            label = "rootJavaFrame-" + rjf.threadSerialNum + "-" + rjf.frameNum;
-          } else if (r instanceof RootStatic) {
-            RootStatic rs = (RootStatic)r;
-            /* TODO: is this really how we want to represent this?  Shouldn't it really
-             * be a node with the class name and edges with the static field names? */
-            label = classIdMap.get(rs.classObjId).className + "." + stringMap.get(rs.fieldNameStringId);
-          }
-          g.addVertex(target);
-          try {
-            g.addEdge(root, target, label);
-          } catch (DuplicateEdgeException e) {
-            System.err.println("Tried to add a duplicate edge from " + root + " to " + target);
-          }
-
-          worklist.push(r.targetId);
-        } catch (InvalidVertexException e) {
-          // TODO(eaftan): Log object id
+        int targetIndex = instanceStore.indexOf(r.targetId);
+        int target = findOrCreateVertex(indexToVertex, vertices, builder, targetIndex);
+
+        // create edge
+        /* TODO: we may want to distinguish between stack roots
+         * and static roots in edges
+         */
+        String label = null;
+        if (r instanceof RootJavaFrame) {
+          RootJavaFrame rjf = (RootJavaFrame)r;
+          label = "rootJavaFrame-" + rjf.threadSerialNum + "-" + rjf.frameNum;
+        } else if (r instanceof RootStatic) {
+          RootStatic rs = (RootStatic)r;
+          /* TODO: is this really how we want to represent this?  Shouldn't it really
+           * be a node with the class name and edges with the static field names? */
+          label = classIdMap.get(rs.classObjId).className + "." + stringMap.get(rs.fieldNameStringId);
         }
+        builder.addEdge(rootVertex, target, label);
+
+        worklist.push(targetIndex);
       }
     }
-    visited.add(0L);
-
-    // iterate over worklist, scanning each object and pushing its children
-    while (!worklist.isEmpty()) {
-      long objId = worklist.pop();
-      if (!visited.contains(objId)) {
-        Instance obj = instanceMap.get(objId);
-
-        // TODO(eaftan): This is failing, figure out why.
-        //Preconditions.checkState(obj != null, "obj with id %s not found", objId);
-
-        if (obj instanceof ObjectInstance) {
-          ObjectInstance objInstance  = (ObjectInstance) obj;
-          Class cls = classIdMap.get(objInstance.classObjId);
-          assert(cls != null);
-
-          if (objInstance.instanceFieldValues != null) {
-            // superclass of Object is 0
-            int i = 0;
-            long nextClass = objInstance.classObjId;
-            while (nextClass != 0) {
-              Class ci = classIdMap.get(nextClass);
-              nextClass = ci.superClassObjId;
-              if (ci.instanceFields != null) {
-                for (InstanceField field: ci.instanceFields) {
-                  if (field.type == Type.OBJ) {
-                    String fieldName = stringMap.get(field.fieldNameStringId);
-                    Value<?> value = objInstance.instanceFieldValues[i];
-                    if (value.type == Type.OBJ) {
-                      @SuppressWarnings("unchecked")
-                      Value<Long> longValue = (Value<Long>) value;
-                      if (longValue.value != 0) {   // reference is non-null
-                        try {
-                          Vertex from = findOrCreateVertex(objIdToVertex, objId);
-                          Vertex to = findOrCreateVertex(objIdToVertex, longValue.value);
-
-                          if (from == null || to == null) {
-                            System.err.println("Cannot find endpoints of edge!");
-                            System.exit(1);
-                          }
-                          g.addVertex(to);
-                          try {
-                            g.addEdge(from, to, fieldName);
-                          } catch (DuplicateEdgeException e) {
-                            System.err.println("Tried to add a duplicate edge from " + from + " to " + to);
-                          }
-                          worklist.push(longValue.value);
-                        } catch (InvalidVertexException e) {
-                          // TODO(eaftan): Log invalid object id
-                        }
-                      }
-                    }
-                  }
-                  i++;
-                }
-              }
-            }
-            if (i != objInstance.instanceFieldValues.length) {
-              System.err.println("Error in object instance");
-              System.exit(1);
-            }
-          }
 
-        } else if (obj instanceof ObjectArray) {
-
-          ObjectArray arrayInstance = (ObjectArray)obj;
-          String arrayType = classIdMap.get(arrayInstance.elemClassObjId).className;
-
-          if (arrayInstance.elems != null) {
-            for (int i=0; i<arrayInstance.elems.length; i++) {
-              long ref = arrayInstance.elems[i];
-              if (ref != 0) {
-                try {
-                  Vertex from = findOrCreateVertex(objIdToVertex, objId);
-                  Vertex to = findOrCreateVertex(objIdToVertex, ref);
-                  g.addVertex(to);
-                  // use array index as edge label
-                  try {
-                    g.addEdge(from, to, Long.toString(i));
-                  } catch (DuplicateEdgeException e) {
-                    System.err.println("Tried to add a duplicate edge from " + from + " to " + to);
-                  }
-                } catch (InvalidVertexException e) {
-                  // TODO(eaftan): log object id
-                }
-                worklist.push(ref);
-              }
-            }
-          }
+    HeapScanner scanner = new HeapScanner(instanceStore, classIdMap, stringMap);
+    if (numThreads > 1) {
+
+      // find the reachable objects in parallel
+      ParallelTraversal traversal = new ParallelTraversal(scanner, numObjects);
+      int[] start = new int[worklist.size()];
+      for (int i = 0; i < start.length; i++) {
+        start[i] = worklist.pop();
+      }
+      traversal.traverse(start, numThreads);
+
+      /* then create their vertices in index order, so vertex numbers do not
+       * depend on how the work was scheduled, and add the edges found by
+       * each thread */
+      BitSet reached = traversal.getReached();
+      for (int index = reached.nextSetBit(0); index >= 0; index = reached.nextSetBit(index + 1)) {
+        findOrCreateVertex(indexToVertex, vertices, builder, index);
+      }
+      for (ParallelTraversal.EdgeBuffer edges : traversal.getEdgeBuffers()) {
+        for (int i = 0; i < edges.size; i++) {
+          builder.addEdge(indexToVertex[edges.from[i]], indexToVertex[edges.to[i]], edges.labels[i]);
         }
+      }
+
+    } else {
 
-        visited.add(objId);
+      // iterate over worklist, scanning each object and pushing its children
+      HeapScanner.ReferenceVisitor visitor = new HeapScanner.ReferenceVisitor() {
+        @Override
+        public void reference(int from, int to, String label) {
+          int fromVertex = findOrCreateVertex(indexToVertex, vertices, builder, from);
+          int toVertex = findOrCreateVertex(indexToVertex, vertices, builder, to);
+          builder.addEdge(fromVertex, toVertex, label);
+          worklist.push(to);
+        }
+      };
+      while (!worklist.isEmpty()) {
+        int index = worklist.pop();
+        if (!visited.get(index)) {
+          scanner.scan(index, visitor);
+          visited.set(index);
+        }
       }
     }
 
-    // we're done building the graph
+    // we're done building the graph; the builder lets go of its edges here
+    CompactGraph cg = builder.build();
+    if (cg.getNumDuplicateEdges() > 0) {
+      System.err.println("Dropped " + cg.getNumDuplicateEdges() + " duplicate edges");
+    }
 
+    // the retained size of each object comes from the dominator tree
+    DominatorTree dominatorTree = cg.computeDominatorTree(rootVertex);
+    long[] sizes = new long[vertices.size()];
+    for (int v = 0; v < sizes.length; v++) {
+      sizes[v] = vertices.get(v).size;
+    }
+    long[] retained = dominatorTree.computeRetainedSizes(sizes);
+    for (int v = 0; v < retained.length; v++) {
+      vertices.get(v).retained = retained[v];
+    }
+
+    /* The summarizers and the GraphML output need a Graph.  Nothing reads
+     * the compact form after this, so drop it rather than keep both alive
+     * through summarization. */
+    Graph<Vertex, String> g = cg.toGraph(vertices);
+    g.setRoot(root);
+    cg = null;
+
+    // ids of summary vertices follow the object ids
+    long maxId = 0;
+    for (Vertex v : vertices) {
+      maxId = Math.max(maxId, v.id);
+    }
+    g.setIdAllocator(new IdAllocator(maxId + 1));
+
+    int id = numHeapDumps++;
+    if (doSummary && summarizers != null) {
+      runSummarizers(g, maxId + 1, id, dominatorTree, retained, indexToVertex);
+
+      // clear data structures
+      instanceStore.clear();
+      roots.clear();
+      return;
+    }
 
     if (doSummary){
       g = this.summarizer.summarize(g);
+      setSummaryRetainedSizes(g, dominatorTree, retained, indexToVertex);
       //Summarizer s = new Softvis2010Summarizer();
       //Summarizer s = new AllocSiteSummarizer();
       //g = s.summarize(g);
     }
 
-    // compute dominators
-    //Map<Vertex, Vertex> dominators = g.computeDominators(root);
-    //for (Vertex to : dominators.keySet()) {
-    //  Vertex from = dominators.get(to);
-    //  if (!from.equals(to))
-    //   g.addOwnershipEdge(from, to, null);
-    //}
+    // add ownership edges from the dominator tree of the graph we output
+    if (printDomEdges) {
+      Map<Vertex, Vertex> dominators;
+      if (doSummary) {
+        dominators = g.computeDominators(g.getRoot());
+      } else {
+        // we already have the dominator tree of the object graph
+        int[] order = dominatorTree.getOrder();
+        dominators = new HashMap<Vertex, Vertex>(order.length * 2);
+        for (int v : order) {
+          dominators.put(vertices.get(v), vertices.get(dominatorTree.getDominator(v)));
+        }
+      }
+      g.addOwnershipEdges(dominators);
+    }
 
     // output to GraphML
-    int id = heapImages.size();
     String gmlpath = Render.graphToGraphML(g, Integer.toString(id),
         printDomEdges, printPtrEdges);
     heapImages.add(gmlpath);
 
     // clear data structures
-    instanceMap.clear();
+    instanceStore.clear();
     roots.clear();
-    Vertex.clearIdsInUse();
 
   }
 
   /* Private methods */
+
+  /**
+   * Fill in the retained size of the vertices of a summary that stand for
+   * more than one object: the total size of the objects dominated by any
+   * of their members.
+   *
+   * @param summary The summary of the object graph
+   * @param dominatorTree The dominator tree of the object graph, by vertex
+   * number
+   * @param retained The retained size of each vertex of the object graph
+   * @param indexToVertex Maps instance store indices to vertex numbers
+   */
+  private void setSummaryRetainedSizes(Graph<Vertex, String> summary,
+      DominatorTree dominatorTree, long[] retained, int[] indexToVertex) {
+    int[] groups = new int[retained.length];
+    Arrays.fill(groups, -1);
+    ArrayList<Vertex> summaryVertices = new ArrayList<Vertex>();
+    int numUnknown = 0;
+    for (Vertex v : summary.getVertices()) {
+      long[] ids = v.getIds();
+      if (ids.length == 1 && ids[0] == v.id) {
+        // a vertex of the object graph, which already has its retained size
+        continue;
+      }
+      for (long objId : ids) {
+        int vertex;
+        if (objId == 0) {
+          // the fake root is not in the instance store
+          vertex = dominatorTree.getRoot();
+        } else {
+          int index = instanceStore.indexOf(objId);
+          vertex = (index < 0) ? -1 : indexToVertex[index];
+        }
+        if (vertex < 0) {
+          // not an object of the graph that was summarized
+          numUnknown++;
+          continue;
+        }
+        groups[vertex] = summaryVertices.size();
+      }
+      summaryVertices.add(v);
+    }
+    if (numUnknown > 0) {
+      System.err.println("Ignored " + numUnknown
+          + " ids of summary vertices that are not in the object graph");
+    }
+
+    long[] groupRetained = dominatorTree.computeRetainedSizes(retained, groups,
+        summaryVertices.size());
+    for (int i = 0; i < groupRetained.length; i++) {
+      summaryVertices.get(i).retained = groupRetained[i];
+    }
+  }
+
+  /**
+   * Run each of the summarizers on the graph in parallel, and output each
+   * summary to its own GraphML file.  Each summarizer works on its own
+   * overlay of the graph with its own id allocator, so the output does not
+   * depend on how the work is scheduled.
+   *
+   * @param g The graph to summarize
+   * @param firstId The first id to give to summary vertices
+   * @param dumpNum The number of the heap dump
+   * @param dominatorTree The dominator tree of g, by vertex number
+   * @param retained The retained size of each vertex of g, by vertex number
+   * @param indexToVertex Maps instance store indices to vertex numbers
+   */
+  private void runSummarizers(final Graph<Vertex, String> g, final long firstId,
+      int dumpNum, final DominatorTree dominatorTree, final long[] retained,
+      final int[] indexToVertex) {
+    int threads = Math.min(summarizers.size(), Runtime.getRuntime().availableProcessors());
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    ArrayList<Future<String>> results = new ArrayList<Future<String>>(summarizers.size());
+    for (Map.Entry<String, Summarizer> entry : summarizers.entrySet()) {
+      final Summarizer s = entry.getValue();
+      final String label = dumpNum + "-" + entry.getKey();
+      results.add(executor.submit(new Callable<String>() {
+        @Override
+        public String call() {
+          GraphOverlay<Vertex, String> view = new GraphOverlay<Vertex, String>(g);
+          view.setIdAllocator(new IdAllocator(firstId));
+          Graph<Vertex, String> summary = s.summarize(view);
+          setSummaryRetainedSizes(summary, dominatorTree, retained, indexToVertex);
+          if (printDomEdges) {
+            summary.addOwnershipEdges(summary.computeDominators(summary.getRoot()));
+          }
+          return Render.graphToGraphML(summary, label, printDomEdges, printPtrEdges);
+        }
+      }));
+    }
+    executor.shutdown();
+
+    for (Future<String> result : results) {
+      try {
+        heapImages.add(result.get());
+      } catch (InterruptedException e) {
+        System.err.println("Interrupted while summarizing: " + e);
+        System.exit(1);
+      } catch (ExecutionException e) {
+        System.err.println("Summarizer failed: " + e.getCause());
+        e.getCause().printStackTrace();
+        System.exit(1);
+      }
+    }
+  }
   private void loadBlacklist(String blacklistFileName) {
     // TODO(eaftan): try-with-resources to close BufferedReader properly
     try {
@@ -564,70 +743,81 @@ public class SummarizeHandler extends NullRecordHandler {
   }
 
   /**
-   * Given an object Instance, produces a corresponding Vertex.  Does not
-   * do anything with edges.
+   * Given the index of an instance in the instance store, produces a
+   * corresponding Vertex.  Does not do anything with edges.
    *
    * TODO: Processing the fields blows up the memory usage.  Ideas?
    */
-  private Vertex instanceToVertex(Instance obj) {
+  private Vertex instanceToVertex(int index) {
 
     // same for all types
-    StackTrace stack = stackTraceMap.get(obj.stackTraceSerialNum);
-    assert (stack != null);
-    String allocContext = stack.toString(stackFrameMap, classSerialNumMap);
+    AllocContext allocContext = getAllocContext(instanceStore.stackTraceSerialNum(index));
 
-    if (obj instanceof ObjectArray) {
-      ObjectArray arrayInstance = (ObjectArray)obj;
-      String arrayType = classIdMap.get(arrayInstance.elemClassObjId).className;
+    long objId = instanceStore.objId(index);
+    int length = instanceStore.length(index);
+
+    if (instanceStore.kind(index) == InstanceStore.OBJECT_ARRAY) {
+      String arrayType = classIdMap.get(instanceStore.classId(index)).className;
       long size = 0;
-      if  (arrayInstance.elems != null)
-        size = arrayInstance.elems.length * Type.OBJ.sizeInBytes();
-      return new Vertex(arrayInstance.objId, arrayType, size, allocContext);
-    } else if (obj instanceof ObjectInstance) {
-      ObjectInstance objInstance  = (ObjectInstance)obj;
-      Class cls = classIdMap.get(objInstance.classObjId);
+      if (length >= 0)
+        size = (long) length * Type.OBJ.sizeInBytes();
+      return new Vertex(objId, arrayType, size, allocContext);
+    } else if (instanceStore.kind(index) == InstanceStore.OBJECT_INSTANCE) {
+      Class cls = classIdMap.get(instanceStore.classId(index));
       if (cls == null) {
         System.err.println("Cannot find class");
         System.exit(1);
       }
-      Vertex v = new Vertex(objInstance.objId, cls.className, cls.instanceSize, allocContext);
-
-      if (objInstance.instanceFieldValues != null) {
-        // superclass of Object is 0
-        int i = 0;
-        long nextClass = objInstance.classObjId;
-        while (nextClass != 0) {
-          Class ci = classIdMap.get(nextClass);
-          nextClass = ci.superClassObjId;
-          if (ci.instanceFields != null) {
-            for (InstanceField field: ci.instanceFields) {
-              if (field.type != Type.OBJ) {
-                String fieldName = stringMap.get(field.fieldNameStringId);
-                String value = objInstance.instanceFieldValues[i].toString();
-                v.addField(fieldName, value);
-              }
-              i++;
-            }
-          }
-        }
-        if (i != objInstance.instanceFieldValues.length) {
+      Vertex v = new Vertex(objId, cls.className, cls.instanceSize, allocContext);
+
+      if (length >= 0) {
+        FieldLayout layout = FieldLayout.of(cls, classIdMap, stringMap, instanceStore);
+        if (layout.numFields != length) {
           System.err.println("Error in object instance");
           System.exit(1);
         }
+        for (int i=0; i<layout.primOffsets.length; i++) {
+          String value = instanceStore.readValue(index, layout.primOffsets[i],
+              layout.primTypes[i]).toString();
+          v.addField(layout.primNames[i], value);
+        }
       }
 
       return v;
-    } else if (obj instanceof PrimArray) {
-      PrimArray arrayInstance = (PrimArray)obj;
-      String arrayType = arrayInstance.elemType.toString() + "[]";
+    } else if (instanceStore.kind(index) == InstanceStore.PRIM_ARRAY) {
+      Type elemType = instanceStore.elemType(index);
+      String arrayType = elemType.toString() + "[]";
       long size = 0;
-      if (arrayInstance.elems != null)
-        size = arrayInstance.elems.length * arrayInstance.elemType.sizeInBytes();
-      Vertex v = new Vertex(arrayInstance.objId, arrayType, size, allocContext);
+      if (length >= 0)
+        size = (long) length * elemType.sizeInBytes();
+      Vertex v = new Vertex(objId, arrayType, size, allocContext);
+
+      int shown = instanceStore.readableLength(index);
+      if (primArrayPreview != InstanceStore.ALL_ELEMENTS) {
+        shown = Math.min(shown, primArrayPreview);
+      }
 
-      if (arrayInstance.elems != null) {
-        for (int i=0; i<arrayInstance.elems.length; i++) {
-          v.addField(Integer.toString(i), arrayInstance.elems[i].toString());
+      long offset = 0;
+      if (primArrayPreview != InstanceStore.ALL_ELEMENTS
+          && (elemType == Type.CHAR || elemType == Type.BYTE)) {
+        if (shown > 0) {
+          // byte[]s are decoded as Latin-1, like the contents of a compact String
+          StringBuilder text = new StringBuilder(shown);
+          for (int i=0; i<shown; i++) {
+            Object value = instanceStore.readValue(index, offset, elemType).value;
+            if (elemType == Type.CHAR) {
+              text.append(((Character) value).charValue());
+            } else {
+              text.append((char) (((Byte) value) & 0xff));
+            }
+            offset += instanceStore.sizeOf(elemType);
+          }
+          v.addField("text", text.toString());
+        }
+      } else {
+        for (int i=0; i<shown; i++) {
+          v.addField(Integer.toString(i), instanceStore.readValue(index, offset, elemType).toString());
+          offset += instanceStore.sizeOf(elemType);
         }
       }
 
@@ -638,6 +828,29 @@ public class SummarizeHandler extends NullRecordHandler {
     return null;
   }
 
+  /**
+   * Get the interned allocation context for a stack trace.  The stack trace
+   * is converted to text only the first time it is seen.
+   *
+   * @param stackTraceSerialNum The serial number of the stack trace
+   * @return The allocation context shared by all objects allocated there
+   */
+  private AllocContext getAllocContext(int stackTraceSerialNum) {
+    AllocContext context = allocContextMap.get(stackTraceSerialNum);
+    if (context == null) {
+      StackTrace stack = stackTraceMap.get(stackTraceSerialNum);
+      assert (stack != null);
+      String text = stack.toString(stackFrameMap, classSerialNumMap);
+      context = allocContextTextMap.get(text);
+      if (context == null) {
+        context = new AllocContext(allocContextTextMap.size(), text);
+        allocContextTextMap.put(text, context);
+      }
+      allocContextMap.put(stackTraceSerialNum, context);
+    }
+    return context;
+  }
+
   /**
    * Given a Class object, produces a corresponding Vertex
    * TODO: is this how we want to represent class objects?
@@ -649,9 +862,7 @@ public class SummarizeHandler extends NullRecordHandler {
 
     long size = 0;      // TODO: what is the size of a class object?
 
-    StackTrace stack = stackTraceMap.get(obj.stackTraceSerialNum);
-    assert (stack != null);
-    String allocContext = stack.toString(stackFrameMap, classSerialNumMap);
+    AllocContext allocContext = getAllocContext(obj.stackTraceSerialNum);
 
     Vertex v = new Vertex(obj.classObjId, "java.lang.Class - " + obj.className,
         size, allocContext);
@@ -660,25 +871,25 @@ public class SummarizeHandler extends NullRecordHandler {
   }
 
   /**
-   * Given an object id and a mapping of previously-created vertices, return
-   * either a new Vertex representing the specified object or an already
-   * existing vertex that was in the map.
+   * Given the instance store index of an object and a mapping of
+   * previously-created vertices, return either the number of a new Vertex
+   * representing the specified object or of an already existing vertex that
+   * was in the map.  New vertices are added to the builder and to the list
+   * of vertices.
    */
-  private Vertex findOrCreateVertex(Map<Long, Vertex> objIdToVertex, long objId)
-      throws InvalidVertexException {
-    Vertex target = objIdToVertex.get(objId);
-    if (target == null) {
-      if (instanceMap.containsKey(objId)) {
-        Instance i = instanceMap.get(objId);
-        target = instanceToVertex(i);
-        objIdToVertex.put(objId, target);
-      } else if (classIdMap.containsKey(objId)) {
-        Class c = classIdMap.get(objId);
-        target = classToVertex(c);
-        objIdToVertex.put(objId, target);
+  private int findOrCreateVertex(int[] indexToVertex, List<Vertex> vertices,
+      CompactGraph.Builder builder, int index) {
+    int target = indexToVertex[index];
+    if (target < 0) {
+      Vertex v;
+      if (instanceStore.kind(index) == InstanceStore.CLASS_OBJECT) {
+        v = classToVertex(classIdMap.get(instanceStore.objId(index)));
       } else {
-        throw new InvalidVertexException("No object or class exists with id " + objId);
+        v = instanceToVertex(index);
       }
+      target = builder.addVertex();
+      vertices.add(v);
+      indexToVertex[index] = target;
     }
 
     return target;
@@ -694,8 +905,8 @@ public class SummarizeHandler extends NullRecordHandler {
   private boolean keepRoot(Root r) {
 
     // discard root if we don't have its instance
-    Instance instance = instanceMap.get(r.targetId);
-    if (instance == null) {
+    int index = instanceStore.indexOf(r.targetId);
+    if (index < 0 || instanceStore.kind(index) == InstanceStore.CLASS_OBJECT) {
       return false;
     }
 
@@ -703,11 +914,11 @@ public class SummarizeHandler extends NullRecordHandler {
     if (r instanceof RootJavaFrame) {
 
       Class cls = null;
-      if (instance instanceof ObjectInstance) {
-        cls = classIdMap.get(((ObjectInstance)instance).classObjId);
+      if (instanceStore.kind(index) == InstanceStore.OBJECT_INSTANCE) {
+        cls = classIdMap.get(instanceStore.classId(index));
         return !javaStackBlacklist.contains(cls.className);
-      } else if (instance instanceof ObjectArray) {
-        cls = classIdMap.get(((ObjectArray)instance).elemClassObjId);
+      } else if (instanceStore.kind(index) == InstanceStore.OBJECT_ARRAY) {
+        cls = classIdMap.get(instanceStore.classId(index));
         return !javaStackBlacklist.contains(cls.className);
       } else {		// PrimArray
         return true;
@@ -22,26 +22,15 @@
 
 package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
 
+import java.io.IOException;
 import java.util.*;
 
-import com.google.common.base.Preconditions;
-
+import edu.tufts.eaftan.heapviz.util.IdAllocator;
+import edu.tufts.eaftan.heapviz.util.IdSet;
 import edu.tufts.eaftan.heapviz.util.XMLSanitizer;
 
 public class Vertex {
 
-  /**
-   * Static variables
-   */
-
-  /**
-   * A set of identifiers currently in use
-   */
-  private static HashSet<Long> idsInUse = new HashSet<Long>(100000);
-
-  private static Random rand = new Random();
-
-
   /**
    * Instance variables
    */
@@ -52,10 +41,10 @@ public class Vertex {
   public long id;
 
   /**
-   * A list of concrete object identifiers that this vertex represents
+   * The concrete object identifiers that this vertex represents, or null
+   * if it represents the single object whose identifier is id
    */
-  //public ArrayList<Long> ids;
-  private long[] ids;
+  private IdSet ids;
 
   /**
    * The representative type of this vertex
@@ -79,12 +68,19 @@ public class Vertex {
    */
   public long size;
 
+  /**
+   * The total size of the objects retained by the objects summarized by
+   * this node, that is, the objects they dominate.  Filled in by
+   * SummarizeHandler once the dominator tree is known.
+   */
+  public long retained;
+
   /**
    * The allocation context for this vertex.  Null if the vertex
    * represents multiple concrete nodes with different allocation
    * contexts.
    */
-  public String allocContext;
+  public AllocContext allocContext;
 
   /**
    * Construct a vertex representing a single concrete object
@@ -92,15 +88,11 @@ public class Vertex {
    * @param id A unique identifier for the object
    * @param type The type of the object
    * @param size The size of the object in bytes
-   * @param allocContext A string representing the allocation context
+   * @param allocContext The allocation context of the object
    */
-  public Vertex(long id, String type, long size, String allocContext) {
-    Preconditions.checkArgument(!idsInUse.contains(id), "Cannot create node, id %s in use", id);
-
-    idsInUse.add(id);
+  public Vertex(long id, String type, long size, AllocContext allocContext) {
     this.id = id;
-    this.ids = new long[1];
-    this.ids[0] = id;
+    this.ids = null;
     this.repType = type;
     this.types = new ArrayList<String>();
     this.types.add(type);
@@ -112,18 +104,15 @@ public class Vertex {
    * Construct a vertex representing more than one concrete object
 
    * @param id A unique identifier for the vertex
-   * @param ids A list of concrete object ids that this vertex represents
+   * @param ids The set of concrete object ids that this vertex represents
    * @param repType The representative type of the vertex
    * @param types A list of concrete object types that this vertex represents
    * @param num The number of concrete objects that are represented by this vertex
    * @param size The total size in bytes of the concrete objects this vertex represents
    * @param allocContext The allocation context for the concrete objects this vertex represents
    */
-  public Vertex(long id, long[] ids, String repType,
-      ArrayList<String> types, long size, String allocContext) {
-    Preconditions.checkArgument(!idsInUse.contains(id), "Cannot create node, id %s in use", id);
-
-    idsInUse.add(id);
+  public Vertex(long id, IdSet ids, String repType,
+      ArrayList<String> types, long size, AllocContext allocContext) {
     this.id = id;
     this.ids = ids;
     this.repType = repType;
@@ -139,7 +128,7 @@ public class Vertex {
    * @param value The value of the field
    */
   public void addField(String name, String value) {
-    if (ids.length > 1) {
+    if (getCount() > 1) {
       System.err.println("Cannot add fields to summarized vertex");
       System.exit(1);
     }
@@ -156,100 +145,96 @@ public class Vertex {
    * the same representative type as the first vertex in the list.
    *
    * @param vertices A list of vertices to merge
+   * @param idAllocator The allocator for the id of the new vertex
    * @return A new vertex that represents all the vertices in the list
    */
-  public static Vertex merge(List<Vertex> vertices) {
-
-
-	int totalIds = 0;
-
-	for(Vertex v: vertices){
-		totalIds += v.ids.length;
-	}
-
-
-    //ArrayList<Long> ids = new ArrayList<Long>();
-	long[] ids = new long[totalIds];
-
+  public static Vertex merge(List<Vertex> vertices, IdAllocator idAllocator) {
 
+    ArrayList<long[]> ids = new ArrayList<long[]>(vertices.size());
     ArrayList<String> types = new ArrayList<String>();
     String repType = null;
-    String allocContext = null;
+    AllocContext allocContext = null;
 
     long totalSize = 0;
-    int idIndex = 0;
     boolean first = true;
     for (Vertex v : vertices) {
       totalSize += v.size;
+      ids.add(v.getIds());
       if (first) {
-        //ids.addAll(v.ids);
-    	for(long id: v.ids){
-    		ids[idIndex] = id;
-    		idIndex++;
-    	}
-
         types.addAll(v.types);
         repType = v.repType;
         allocContext = v.allocContext;
         first = false;
       }
       else {
-        for (Long id : v.ids) {
-          if (!contains(id, ids)) {
-            ids[idIndex] = id;
-            idIndex++;
-          }
-        }
         for (String type : v.types) {
           if (!types.contains(type)) {
             types.add(type);
           }
         }
         //In some summary algorithms, allocContext may be null to begin with,
-        //thus the two checks.
-        if (v.allocContext != null && !v.allocContext.equals(allocContext)) {
+        //thus the two checks.  Contexts are interned, so comparing
+        //references is enough.
+        if (v.allocContext != null && v.allocContext != allocContext) {
           allocContext = null;
         }
       }
     }
-    //ids may have been made longer than necessary, so we copy out the necessary chunk here.
-    return new Vertex(getFreshId(), Arrays.copyOf(ids, idIndex), repType, types, totalSize, allocContext);
+    return new Vertex(idAllocator.nextId(), IdSet.union(ids), repType, types, totalSize, allocContext);
   }
 
   /**
-   * Produce a GraphML representation of this node
+   * Get the concrete object identifiers that this vertex represents
    *
-   * @return A String with a GraphML representation of this node
+   * @return The identifiers, sorted
    */
-  public String toGraphML() {
-    StringBuilder sb = new StringBuilder();
+  public long[] getIds() {
+    return ids == null ? new long[] {id} : ids.toArray();
+  }
+
+  /**
+   * Get the number of concrete objects that this vertex represents
+   */
+  public int getCount() {
+    return ids == null ? 1 : ids.size();
+  }
+
+  /**
+   * Write a GraphML representation of this node
+   *
+   * @param out The writer to append the node to
+   */
+  public void toGraphML(GraphMLWriter out) throws IOException {
+    out.append("<node id=\"");
+    out.append(this.id);
+    out.append("\">\n");
 
-    sb.append("<node id=\"");
-    sb.append(this.id);
-    sb.append("\">\n");
+    out.append("  <data key=\"type\">");
+    out.append(String.valueOf(repType));
+    out.append("</data>\n");
 
-    sb.append("  <data key=\"type\">");
-    sb.append(repType);
-    sb.append("</data>\n");
+    out.append("  <data key=\"count\">");
+    out.append(getCount());
+    out.append("</data>\n");
 
-    sb.append("  <data key=\"count\">");
-    sb.append(ids.length);
-    sb.append("</data>\n");
+    out.append("  <data key=\"size\">");
+    out.append(size);
+    out.append("</data>\n");
 
-    sb.append("  <data key=\"size\">");
-    sb.append(size);
-    sb.append("</data>\n");
+    out.append("  <data key=\"retained\">");
+    out.append(retained);
+    out.append("</data>\n");
 
-    sb.append("  <data key=\"types\">");
+    out.append("  <data key=\"types\">");
     boolean first = true;
     for (String t : types) {
       if (!first) {
-        sb.append(":");
+        out.append(':');
       }
-      sb.append(t);
+      out.append(String.valueOf(t));
       first = false;
     }
-    sb.append("</data>\n");
+    out.append("</data>\n");
 
 
     /* Fields
@@ -258,27 +243,27 @@ public class Vertex {
      * 2) having invalid unicode characters show up in the output
      */
     if (fields != null && !fields.isEmpty()) {
-      sb.append("  <data key=\"members\">");
+      out.append("  <data key=\"members\">");
       for (String fieldName : fields.keySet()) {
         String value = fields.get(fieldName);
-        int length = value.length();
-        sb.append(fieldName + ":" + length + ":" +
-            XMLSanitizer.escape(XMLSanitizer.sanitize(value)));
+        out.append(fieldName);
+        out.append(':');
+        out.append(value.length());
+        out.append(':');
+        out.append(XMLSanitizer.escape(XMLSanitizer.sanitize(value)));
       }
-      sb.append("</data>\n");
+      out.append("</data>\n");
     }
 
     /* Alloc site */
     if (allocContext != null) {
-      sb.append("  <data key=\"allocContext\">");
-      sb.append(XMLSanitizer.escape(XMLSanitizer.sanitize(allocContext)));
-      sb.append("</data>\n");
+      out.append("  <data key=\"allocContext\">");
+      out.append(allocContext.toGraphML());
+      out.append("</data>\n");
 
     }
 
-    sb.append("</node>\n");
-
-    return sb.toString();
+    out.append("</node>\n");
   }
 
 
@@ -308,40 +293,10 @@ public class Vertex {
     return true;
   }
 
-  /**
-   * Get a fresh (unused) identifier
-   *
-   * @return A fresh (unused) identifier
-   */
-  private static long getFreshId() {
-    long id;
-
-    while (true) {
-      id = rand.nextLong();
-      if (!idsInUse.contains(id))
-        return id;
-    }
-
-  }
-
-  public static void clearIdsInUse() {
-    idsInUse.clear();
-  }
-
   @Override
   public String toString() {
     return id + " (" + repType + ")";
 
   }
 
-  private  static boolean contains(long target, long[] arr){
-	  for(int i = 0; i < arr.length; i++){
-		  if(arr[i] == target){
-			  return true;
-		  }
-	  }
-
-	  return false;
-  }
-
 }
@@ -17,41 +17,83 @@
 package edu.tufts.eaftan.heapviz.summarizer;
 
 import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
+import edu.tufts.eaftan.heapviz.util.DominatorTree;
 import edu.tufts.eaftan.heapviz.util.Graph;
 
-import java.util.Set;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
+/**
+ * A summarizer that merges vertices by ownership, where a vertex is owned
+ * by its immediate dominator.  Vertices of the same type whose owners are
+ * in the same group are merged.
+ *
+ * Groups are found in one pass down the dominator tree from the root of
+ * the graph, so the owner of each vertex is in a group by the time the
+ * vertex is reached.  A vertex joins its owner's group if that group has
+ * the same type, so recursive structures such as lists and trees become
+ * one vertex.  Otherwise it joins the group for its type under its owner's
+ * group.  Groups are keyed by the number of the type and the number of the
+ * owner's group, packed into a long.
+ */
 public class DominatorSetSummarizer implements Summarizer {
-	private Set<Vertex> roots; 
-	
-	public DominatorSetSummarizer(Set<Vertex> roots){
-		this.roots = roots;
-		
-	}
-	
+
 	@Override
 	public Graph<Vertex, String> summarize(Graph<Vertex, String> g) {
-		ArrayList<Map<Vertex,Vertex>> dominatorSets;
-		Softvis2010Summarizer s = new Softvis2010Summarizer();
-		HashMap<Set<Vertex>,Set<Vertex>> m;//Map from dominator set to nodes that have that dominator set.
-		
-		dominatorSets = new ArrayList<Map<Vertex,Vertex>>();
-		
-		for(Vertex r: roots){
-			dominatorSets.add( g.computeDominators(r) );
+		Vertex root = g.getRoot();
+		if (root == null) {
+			System.err.println("Cannot summarize by dominators without a root");
+			System.exit(1);
 		}
-		
-		//iterate over graph
-		//if nodes have same type, same dominator set, merge them
-		
-		
-		
-		
-		// TODO Auto-generated method stub
-		return null;
+
+		// number the vertices with the root first
+		ArrayList<Vertex> vertices = new ArrayList<Vertex>(g.getNumVertices());
+		vertices.add(root);
+		for (Vertex v : g.getVertices()) {
+			if (v != root) {
+				vertices.add(v);
+			}
+		}
+		DominatorTree tree = g.toCompactGraph(vertices).computeDominatorTree(0);
+		int[] order = tree.getOrder();
+
+		HashMap<String, Integer> typeIds = new HashMap<String, Integer>();
+		HashMap<Long, Integer> groupIds = new HashMap<Long, Integer>();
+		ArrayList<List<Vertex>> groups = new ArrayList<List<Vertex>>();
+		ArrayList<Integer> groupTypes = new ArrayList<Integer>();
+		int[] groupOf = new int[vertices.size()];
+
+		for (int i = 0; i < order.length; i++) {
+			int v = order[i];
+			Vertex vertex = vertices.get(v);
+			Integer type = typeIds.get(vertex.repType);
+			if (type == null) {
+				type = typeIds.size();
+				typeIds.put(vertex.repType, type);
+			}
+
+			int group;
+			int owner = (i == 0) ? -1 : groupOf[tree.getDominator(v)];
+			if (owner >= 0 && groupTypes.get(owner).equals(type)) {
+				group = owner;
+			} else {
+				long key = ((long) type << 32) | (owner & 0xffffffffL);
+				Integer id = groupIds.get(key);
+				if (id == null) {
+					id = groups.size();
+					groupIds.put(key, id);
+					groups.add(new ArrayList<Vertex>());
+					groupTypes.add(type);
+				}
+				group = id;
+			}
+			groupOf[v] = group;
+			groups.get(group).add(vertex);
+		}
+
+		// vertices not reachable from the root are left as they are
+		return Utils.quotient(g, groups);
 	}
 
 }
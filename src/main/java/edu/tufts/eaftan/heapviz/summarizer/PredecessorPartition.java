@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.summarizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
+import edu.tufts.eaftan.heapviz.util.Graph;
+import edu.tufts.eaftan.heapviz.util.IntStack;
+
+/**
+ * Computes the fixpoint of "merge vertices with the same type and the same
+ * predecessors" without rebuilding the graph after every round.
+ *
+ * The vertices are partitioned into blocks, each of which will become one
+ * vertex of the summary.  A block's key is its type plus the sorted ids of
+ * the blocks that point into it; a block with more than one member does
+ * not count itself, since merging drops the edges inside it.  Each round
+ * merges all blocks with equal keys.  Only the blocks that were just
+ * created and the successors of those blocks can have a new key, so only
+ * they are looked at in the next round; the keys of all other blocks stay
+ * in the table.  This gives the same result as merging round by round on
+ * the graph itself.
+ *
+ * Computing a block's key takes time proportional to the in-degree of its
+ * members, and a block is re-keyed in every round in which one of its
+ * predecessors was merged.  A hub with in-degree d whose predecessors keep
+ * merging for r rounds therefore costs O(d * r) in all; the total over all
+ * blocks is at most the number of edges times the number of rounds, and is
+ * usually far less, since most blocks are only keyed once or twice.
+ */
+public class PredecessorPartition {
+
+  /**
+   * The type and predecessor blocks of a block
+   */
+  private static class Key {
+    private final String type;
+    private final int[] preds;
+    private final int hash;
+
+    public Key(String type, int[] preds) {
+      this.type = type;
+      this.preds = preds;
+      this.hash = 31 * type.hashCode() + Arrays.hashCode(preds);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hash == other.hash && type.equals(other.type) &&
+          Arrays.equals(preds, other.preds);
+    }
+  }
+
+  private final ArrayList<Vertex> vertices;
+
+  /* predecessors and successors of each vertex, in compressed form: those
+   * of vertex v are at [start[v], start[v+1]) */
+  private final int[] predStart;
+  private final int[] preds;
+  private final int[] succStart;
+  private final int[] succs;
+
+  /* blocks are numbered 0..n-1 for the initial singletons, and from n up
+   * for merged blocks.  There are at most n-1 merges. */
+  private final int[] blockOf;
+  private final int[][] members;
+  private final Key[] keys;
+  private int numBlocks;
+
+  private final HashMap<Key, Integer> keyToBlock;
+
+  private PredecessorPartition(Graph<Vertex, String> g) {
+    vertices = new ArrayList<Vertex>(g.getVertices());
+    int n = vertices.size();
+    HashMap<Vertex, Integer> vertexToIndex = new HashMap<Vertex, Integer>(n * 2);
+    for (int i = 0; i < n; i++) {
+      vertexToIndex.put(vertices.get(i), i);
+    }
+
+    predStart = new int[n + 1];
+    succStart = new int[n + 1];
+    for (int i = 0; i < n; i++) {
+      predStart[i + 1] = predStart[i] + g.getInDegree(vertices.get(i));
+      succStart[i + 1] = succStart[i] + g.getOutDegree(vertices.get(i));
+    }
+    preds = new int[predStart[n]];
+    succs = new int[succStart[n]];
+    for (int i = 0; i < n; i++) {
+      Vertex v = vertices.get(i);
+      for (int j = 0; j < g.getInDegree(v); j++) {
+        preds[predStart[i] + j] = vertexToIndex.get(g.getIncomingEdge(v, j).from);
+      }
+      for (int j = 0; j < g.getOutDegree(v); j++) {
+        succs[succStart[i] + j] = vertexToIndex.get(g.getOutgoingEdge(v, j).to);
+      }
+    }
+
+    int maxBlocks = Math.max(1, 2 * n - 1);
+    blockOf = new int[n];
+    members = new int[maxBlocks][];
+    keys = new Key[maxBlocks];
+    for (int i = 0; i < n; i++) {
+      blockOf[i] = i;
+      members[i] = new int[] {i};
+    }
+    numBlocks = n;
+    keyToBlock = new HashMap<Key, Integer>(n * 2);
+  }
+
+  /**
+   * Find the groups of vertices that merging vertices with the same type
+   * and predecessors, until nothing changes, would put together.
+   *
+   * @param g The graph to partition.  It is not modified.
+   * @return The groups with more than one vertex
+   */
+  public static List<ArrayList<Vertex>> compute(Graph<Vertex, String> g) {
+    PredecessorPartition p = new PredecessorPartition(g);
+    p.refine();
+
+    List<ArrayList<Vertex>> groups = new ArrayList<ArrayList<Vertex>>();
+    int n = p.vertices.size();
+    for (int b = n; b < p.numBlocks; b++) {
+      if (p.members[b] != null) {
+        ArrayList<Vertex> group = new ArrayList<Vertex>(p.members[b].length);
+        for (int v : p.members[b]) {
+          group.add(p.vertices.get(v));
+        }
+        groups.add(group);
+      }
+    }
+    return groups;
+  }
+
+  private void refine() {
+    int n = vertices.size();
+    int[] stamp = new int[members.length];
+    int round = 1;
+    IntStack changed = new IntStack(n);
+    for (int b = 0; b < n; b++) {
+      changed.push(b);
+    }
+
+    int[] buf = new int[16];
+    ArrayList<ArrayList<Integer>> collisions = new ArrayList<ArrayList<Integer>>();
+    HashMap<Key, ArrayList<Integer>> collisionsByKey = new HashMap<Key, ArrayList<Integer>>();
+    int[] changedBlocks = new int[n];
+
+    while (!changed.isEmpty()) {
+      // recompute keys of changed blocks, against the blocks as they were
+      // at the start of the round
+      int numChanged = changed.size();
+      if (changedBlocks.length < numChanged) {
+        changedBlocks = new int[numChanged];
+      }
+      for (int i = 0; i < numChanged; i++) {
+        int b = changed.pop();
+        changedBlocks[i] = b;
+        if (keys[b] != null) {
+          keyToBlock.remove(keys[b]);
+        }
+      }
+      for (int i = 0; i < numChanged; i++) {
+        int b = changedBlocks[i];
+        int len = 0;
+        for (int v : members[b]) {
+          int predCount = predStart[v + 1] - predStart[v];
+          if (buf.length < len + predCount) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + predCount));
+          }
+          for (int j = predStart[v]; j < predStart[v + 1]; j++) {
+            buf[len++] = blockOf[preds[j]];
+          }
+        }
+        keys[b] = new Key(vertices.get(members[b][0]).repType, sortedSet(buf, len, members[b].length > 1 ? b : -1));
+      }
+
+      // find blocks with equal keys
+      collisions.clear();
+      collisionsByKey.clear();
+      for (int i = 0; i < numChanged; i++) {
+        int b = changedBlocks[i];
+        Integer other = keyToBlock.get(keys[b]);
+        if (other == null) {
+          keyToBlock.put(keys[b], b);
+        } else {
+          ArrayList<Integer> group = collisionsByKey.get(keys[b]);
+          if (group == null) {
+            group = new ArrayList<Integer>();
+            group.add(other);
+            collisionsByKey.put(keys[b], group);
+            collisions.add(group);
+          }
+          group.add(b);
+        }
+      }
+
+      // merge them
+      round++;
+      int firstMerged = numBlocks;
+      for (ArrayList<Integer> group : collisions) {
+        int size = 0;
+        for (int b : group) {
+          size += members[b].length;
+        }
+        keyToBlock.remove(keys[group.get(0)]);
+        int merged = numBlocks++;
+        int[] m = new int[size];
+        int pos = 0;
+        for (int b : group) {
+          System.arraycopy(members[b], 0, m, pos, members[b].length);
+          pos += members[b].length;
+          members[b] = null;
+          keys[b] = null;
+        }
+        for (int v : m) {
+          blockOf[v] = merged;
+        }
+        members[merged] = m;
+      }
+
+      // the merged blocks and their successors need new keys
+      for (int merged = firstMerged; merged < numBlocks; merged++) {
+        if (stamp[merged] != round) {
+          stamp[merged] = round;
+          changed.push(merged);
+        }
+        for (int v : members[merged]) {
+          for (int j = succStart[v]; j < succStart[v + 1]; j++) {
+            int s = blockOf[succs[j]];
+            if (stamp[s] != round) {
+              stamp[s] = round;
+              changed.push(s);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Sort the first len elements of buf and return them without duplicates
+   * and without exclude
+   */
+  private static int[] sortedSet(int[] buf, int len, int exclude) {
+    Arrays.sort(buf, 0, len);
+    int out = 0;
+    for (int i = 0; i < len; i++) {
+      if (buf[i] != exclude && (out == 0 || buf[out - 1] != buf[i])) {
+        buf[out++] = buf[i];
+      }
+    }
+    return Arrays.copyOf(buf, out);
+  }
+
+}
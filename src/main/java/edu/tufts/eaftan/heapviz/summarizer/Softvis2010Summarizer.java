@@ -18,17 +18,15 @@ package edu.tufts.eaftan.heapviz.summarizer;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 //import edu.tufts.cs.eaftan.heapvis.handler.summarizehandler.SoftVis2010Summarizer;
 
 
 import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
-import edu.tufts.eaftan.heapviz.util.DuplicateEdgeException;
 import edu.tufts.eaftan.heapviz.util.Edge;
 import edu.tufts.eaftan.heapviz.util.Graph;
+import edu.tufts.eaftan.heapviz.util.UnionFind;
 
 
 /**A summarizer based on our algorithm in the Softvis2010 paper.*/
@@ -42,164 +40,60 @@ public class Softvis2010Summarizer implements Summarizer {
 
 	@Override
 	public Graph<Vertex, String> summarize(Graph<Vertex, String> inputG) {
-		Graph<Vertex,String> g = inputG.deepishCopy();
-
-	    mergeBackbones(g);
-	    boolean changed = true;
-
-	    while (changed) {
-	      changed = false;
-	      changed = mergeSamePredecessorsAndType(g);
-	    }
-
-	    return g;
+		Graph<Vertex, String> g = Utils.quotient(inputG, findBackbones(inputG));
+		return Utils.quotient(g, PredecessorPartition.compute(g));
 	}
 
 	  /**
-	   * Merges the backbones of recursive data structures, for example, the
-	   * LinkedList$Node objects in a LinkedList.  We pairwise collapse two
-	   * nodes of the same type that are linked by an edge.  We continue this
-	   * until there are no more such pairs of nodes in the graph.
+	   * Finds the backbones of recursive data structures, for example, the
+	   * LinkedList$Node objects in a LinkedList.  Two nodes of the same type
+	   * that are linked by an edge belong to the same backbone, so each
+	   * backbone is a connected component of the same-type edges.  We find
+	   * the components with a union-find in one pass over the edges.
 	   *
 	   * TODO: Can this rule collapse things we don't want to be collapsed?
 	   * LinkedList of LinkedLists example
 	   * Tree example
 	   *
 	   * @param g The graph whose recursive backbones we want to collapse
+	   * @return The backbones with more than one vertex
 	   */
-	  public static boolean mergeBackbones(Graph<Vertex, String> g) {
-
-	    boolean anychange = false;
-
-	    boolean changed = true;
-	    while (changed) {
-	      changed = false;
-	      Set<Vertex> vertices = g.getVertices();
-	      for (Vertex v : vertices) {
-	        List<Edge<Vertex, String>> outEdges = g.getOutgoingEdges(v);
-
-	        // children
-	        for (Edge<Vertex, String> e : outEdges) {
-	          if (!e.from.equals(e.to)) {   // skip self edges
-	            if (e.to.repType.equals(v.repType)) {
-	              // same type
-	              ArrayList<Vertex> thisList = new ArrayList<Vertex>();
-	              thisList.add(v);
-	              thisList.add(e.to);
-	              mergeVertices(g, thisList);
-	              anychange = true;
-	              changed = true;
-	              break;
-	            }
-	          }
-	        }
-	        if (changed) break;
-	      }
-	    }
-
-	    return anychange;
-	  }
-
-
-
-
-	public static void mergeVertices(Graph<Vertex, String> g, List<Vertex> vertices) {
+	  public static List<ArrayList<Vertex>> findBackbones(Graph<Vertex, String> g) {
 
-	    // create new summary vertex
-	    Vertex newVertex = Vertex.merge(vertices);
+	    ArrayList<Vertex> vertices = new ArrayList<Vertex>(g.getVertices());
+	    HashMap<Vertex, Integer> vertexToIndex = new HashMap<Vertex, Integer>(vertices.size() * 2);
+	    for (int i = 0; i < vertices.size(); i++) {
+	      vertexToIndex.put(vertices.get(i), i);
+	    }
 
-	    // find all predecessors and successors of the new vertex
-	    // TODO: what to do with self edges?  right now we're deleting them
-	    HashSet<Vertex> preds = new HashSet<Vertex>();
-	    HashSet<Vertex> succs = new HashSet<Vertex>();
-	    for (Vertex v : vertices) {
-	      List<Edge<Vertex, String>> edges = g.getEdges(v);
-	      for (Edge<Vertex, String> e : edges) {
-	        if (e.from.equals(v) && !vertices.contains(e.to)) {
-	          // outgoing
-	          succs.add(e.to);
-	        } else if (e.to.equals(v) && !vertices.contains(e.from)) {
-	          // incoming
-	          preds.add(e.from);
+	    UnionFind backbones = new UnionFind(vertices.size());
+	    for (int i = 0; i < vertices.size(); i++) {
+	      Vertex v = vertices.get(i);
+	      for (int j = 0; j < g.getOutDegree(v); j++) {
+	        Edge<Vertex, String> e = g.getOutgoingEdge(v, j);
+	        if (!e.from.equals(e.to) && e.to.repType.equals(v.repType)) {
+	          backbones.union(i, vertexToIndex.get(e.to));
 	        }
 	      }
-	      g.removeVertex(v);
 	    }
 
-	    // add new vertex and edges to graph
-	    g.addVertex(newVertex);
-	    for (Vertex pred : preds) {
-	      try {
-	        g.addEdge(pred, newVertex, null);
-	      } catch (DuplicateEdgeException e) {
-	        System.err.println("Tried to add a duplicate edge from " + pred + " to " + newVertex);
-	      }
-	    }
-	    for (Vertex succ : succs) {
-	      try {
-	        g.addEdge(newVertex, succ, null);
-	      } catch (DuplicateEdgeException e) {
-	        System.err.println("Tried to add a duplicate edge from " + newVertex + " to " + succ);
+	    // collect the components with more than one vertex, in vertex order
+	    HashMap<Integer, ArrayList<Vertex>> components = new HashMap<Integer, ArrayList<Vertex>>();
+	    ArrayList<ArrayList<Vertex>> toMerge = new ArrayList<ArrayList<Vertex>>();
+	    for (int i = 0; i < vertices.size(); i++) {
+	      if (backbones.size(i) > 1) {
+	        int rep = backbones.find(i);
+	        ArrayList<Vertex> component = components.get(rep);
+	        if (component == null) {
+	          component = new ArrayList<Vertex>(backbones.size(rep));
+	          components.put(rep, component);
+	          toMerge.add(component);
+	        }
+	        component.add(vertices.get(i));
 	      }
 	    }
 
+	    return toMerge;
 	  }
 
-
-
-	  /**
-	   * Goes over the whole graph, computes predecessor sets for each vertex,
-	   * then merges vertices with the same predecessor sets and the same
-	   * type.
-	   *
-	   * @param g The graph to simplify
-	   * @return True if the graph has changed
-	   */
-	  public static boolean mergeSamePredecessorsAndType(Graph<Vertex, String> g) {
-
-		    boolean changed = false;
-
-		    /* Generate map of predecessor sets to lists of vertices.  We want to find
-		     * all vertices with the same predecessors.
-		     */
-		    HashMap<Set<Vertex>, ArrayList<Vertex>> data = new HashMap<Set<Vertex>, ArrayList<Vertex>>();
-		    for (Vertex v : g.getVertices()) {
-		      Set<Vertex> ps = g.getPredecessors(v);
-		      ArrayList<Vertex> list = data.get(ps);
-		      if (list == null) {
-		        list = new ArrayList<Vertex>();
-		        data.put(ps, list);
-		      }
-		      list.add(v);
-		    }
-
-		    /* Now for each list of vertices with the same predecessors, find those
-		     * with the same type and merge them.
-		     */
-		    for (Set<Vertex> ps : data.keySet()) {
-		      ArrayList<Vertex> list = data.get(ps);
-		      HashMap<String, ArrayList<Vertex>> byType = new HashMap<String, ArrayList<Vertex>>();
-		      for (Vertex v : list) {
-		        ArrayList<Vertex> list2 = byType.get(v.repType);
-		        if (list2 == null) {
-		          list2 = new ArrayList<Vertex>();
-		          byType.put(v.repType, list2);
-		        }
-		        list2.add(v);
-		      }
-
-		      for (String type : byType.keySet()) {
-		        ArrayList<Vertex> toMerge = byType.get(type);
-		        if (toMerge.size() > 1) {
-		          mergeVertices(g, toMerge);
-		          changed = true;
-		        }
-		      }
-		    }
-
-		    return changed;
-
-	  }
-
-
 }
@@ -30,8 +30,6 @@ public class TypeGraphSummarizer implements Summarizer {
 		HashMap<List<String>, List<Vertex>> m = new HashMap<List<String>, List<Vertex>>();
 
 
-		Graph<Vertex,String> copy = g.deepishCopy();
-
 		for(Vertex v : g.getVertices()){
 
 		  // TODO(eaftan): Remove check for v != null.  Why are there null vertices in the graph?
@@ -44,11 +42,7 @@ public class TypeGraphSummarizer implements Summarizer {
 		  }
 		}
 
-		for(List<Vertex> vs: m.values()){
-			Utils.mergeVertices(copy, vs);
-		}
-
-		return copy;
+		return Utils.quotient(g, m.values());
 	}
 
 }
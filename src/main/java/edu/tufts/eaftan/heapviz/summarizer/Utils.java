@@ -16,58 +16,107 @@
 
 package edu.tufts.eaftan.heapviz.summarizer;
 
-import java.util.List;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
 
 import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
 import edu.tufts.eaftan.heapviz.util.DuplicateEdgeException;
 import edu.tufts.eaftan.heapviz.util.Edge;
 import edu.tufts.eaftan.heapviz.util.Graph;
+import edu.tufts.eaftan.heapviz.util.GraphOverlay;
 
 /*Some static utility functions that may be useful for many summarizers
  */
 public class Utils {
 	
 	
-	public static void mergeVertices(Graph<Vertex, String> g, List<Vertex> vertices) {
-	    
-	    // create new summary vertex
-	    Vertex newVertex = Vertex.merge(vertices);
+	/**
+	 * Merge many groups of vertices at once, in one pass over the edges of
+	 * the groups.  The result is the same as calling
+	 * Analysis.mergeVertices on each group in turn:
+	 *
+	 *   - each group, even one with a single vertex, becomes one new vertex
+	 *   - vertices that are in no group are left as they are
+	 *   - edges between two vertices in no group keep their labels
+	 *   - other edges get a null label, and parallel ones become one edge
+	 *   - edges inside a group are dropped
+	 *   - the root is the vertex that the root of g became, where
+	 *     mergeVertices would leave the graph without a root
+	 *
+	 * The result is an overlay on g, so the parts of g that are in no group
+	 * are shared rather than copied.
+	 *
+	 * @param g The input graph.  It is not modified, and must not be
+	 *          modified while the result is in use.
+	 * @param groups Disjoint groups of vertices of g
+	 * @return The quotient graph
+	 */
+	public static Graph<Vertex, String> quotient(Graph<Vertex, String> g,
+	    Collection<? extends List<Vertex>> groups) {
 
-	    // find all predecessors and successors of the new vertex
-	    // TODO: what to do with self edges?  right now we're deleting them
-	    HashSet<Vertex> preds = new HashSet<Vertex>();
-	    HashSet<Vertex> succs = new HashSet<Vertex>();
-	    for (Vertex v : vertices) {
-	      List<Edge<Vertex, String>> edges = g.getEdges(v);
-	      for (Edge<Vertex, String> e : edges) {
-	        if (e.from.equals(v) && !vertices.contains(e.to)) {
-	          // outgoing
-	          succs.add(e.to);
-	        } else if (e.to.equals(v) && !vertices.contains(e.from)) {
-	          // incoming
-	          preds.add(e.from);
-	        } 
+	    GraphOverlay<Vertex, String> result = new GraphOverlay<Vertex, String>(g);
+
+	    ArrayList<Vertex> newVertices = new ArrayList<Vertex>(groups.size());
+	    HashMap<Vertex, Vertex> oldToNew = new HashMap<Vertex, Vertex>();
+	    for (List<Vertex> group : groups) {
+	      Vertex newVertex = Vertex.merge(group, g.getIdAllocator());
+	      newVertices.add(newVertex);
+	      for (Vertex v : group) {
+	        Preconditions.checkArgument(oldToNew.put(v, newVertex) == null,
+	            "Vertex %s is in more than one group", v);
 	      }
-	      g.removeVertex(v);
 	    }
 
-	    // add new vertex and edges to graph
-	    g.addVertex(newVertex);
-	    for (Vertex pred : preds) {
-	      try {
-	        g.addEdge(pred, newVertex, null);
-	      } catch (DuplicateEdgeException e) {
-	        System.err.println("Tried to add a duplicate edge from " + pred + " to " + newVertex);
-	      }
+	    for (Vertex v : oldToNew.keySet()) {
+	      result.removeVertex(v);
 	    }
-	    for (Vertex succ : succs) {
-	      try {
-	        g.addEdge(newVertex, succ, null);
-	      } catch (DuplicateEdgeException e) {
-	        System.err.println("Tried to add a duplicate edge from " + newVertex + " to " + succ);
+	    for (Vertex v : newVertices) {
+	      result.addVertex(v);
+	    }
+	    if (oldToNew.containsKey(g.getRoot())) {
+	      result.setRoot(oldToNew.get(g.getRoot()));
+	    }
+
+	    /* add the edges out of each group, and the edges into it from vertices
+	     * in no group */
+	    HashSet<Vertex> succs = new HashSet<Vertex>();
+	    HashSet<Vertex> preds = new HashSet<Vertex>();
+	    Iterator<Vertex> newIt = newVertices.iterator();
+	    for (List<Vertex> group : groups) {
+	      Vertex newVertex = newIt.next();
+	      succs.clear();
+	      preds.clear();
+	      for (Vertex v : group) {
+	        for (int i = 0; i < g.getOutDegree(v); i++) {
+	          Vertex to = g.getOutgoingEdge(v, i).to;
+	          Vertex newTo = oldToNew.containsKey(to) ? oldToNew.get(to) : to;
+	          if (newTo != newVertex && succs.add(newTo)) {
+	            addEdge(result, newVertex, newTo);
+	          }
+	        }
+	        for (int i = 0; i < g.getInDegree(v); i++) {
+	          Vertex from = g.getIncomingEdge(v, i).from;
+	          if (!oldToNew.containsKey(from) && preds.add(from)) {
+	            addEdge(result, from, newVertex);
+	          }
+	        }
 	      }
 	    }
 
-	  }
+	    return result;
+	}
+
+	private static void addEdge(Graph<Vertex, String> g, Vertex from, Vertex to) {
+	    try {
+	      g.addEdge(from, to, null);
+	    } catch (DuplicateEdgeException e) {
+	      System.err.println("Tried to add a duplicate edge from " + from + " to " + to);
+	    }
+	}
 }
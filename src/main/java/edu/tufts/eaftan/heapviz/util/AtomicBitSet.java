@@ -0,0 +1,75 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed-size set of bits that can be set concurrently by many threads.
+ */
+public class AtomicBitSet {
+
+  private final AtomicLongArray words;
+  private final int size;
+
+  public AtomicBitSet(int size) {
+    this.size = size;
+    words = new AtomicLongArray((size + 63) >>> 6);
+  }
+
+  public boolean get(int i) {
+    return (words.get(i >>> 6) & (1L << i)) != 0;
+  }
+
+  /**
+   * Set a bit
+   *
+   * @return True if this call set the bit, false if it was already set
+   */
+  public boolean set(int i) {
+    int word = i >>> 6;
+    long mask = 1L << i;
+    while (true) {
+      long old = words.get(word);
+      if ((old & mask) != 0) {
+        return false;
+      }
+      if (words.compareAndSet(word, old, old | mask)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Copy the bits into an ordinary BitSet.  Should only be called once no
+   * other thread is setting bits.
+   */
+  public BitSet toBitSet() {
+    BitSet bits = new BitSet(size);
+    for (int w = 0; w < words.length(); w++) {
+      long word = words.get(w);
+      while (word != 0) {
+        int bit = Long.numberOfTrailingZeros(word);
+        bits.set((w << 6) + bit);
+        word &= word - 1;
+      }
+    }
+    return bits;
+  }
+
+}
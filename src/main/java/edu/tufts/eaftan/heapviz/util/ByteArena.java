@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.util.ArrayList;
+
+/**
+ * An append-only buffer of bytes addressed by long offsets.  The bytes are
+ * kept in fixed-size chunks so the arena can grow past 2 GB without ever
+ * copying what has already been written.  Multi-byte values are stored
+ * big-endian, the same byte order used by HPROF files.
+ */
+public class ByteArena implements ByteSource {
+
+  private static final int CHUNK_BITS = 20;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  private ArrayList<byte[]> chunks = new ArrayList<byte[]>();
+
+  /**
+   * The offset at which the next byte will be written
+   */
+  private long size = 0;
+
+  /**
+   * Get the number of bytes written to the arena
+   *
+   * @return The offset at which the next byte will be written
+   */
+  public long size() {
+    return size;
+  }
+
+  public void putByte(byte b) {
+    int chunk = (int) (size >>> CHUNK_BITS);
+    if (chunk == chunks.size()) {
+      chunks.add(new byte[CHUNK_SIZE]);
+    }
+    chunks.get(chunk)[(int) (size & CHUNK_MASK)] = b;
+    size++;
+  }
+
+  public void putShort(short s) {
+    putByte((byte) (s >>> 8));
+    putByte((byte) s);
+  }
+
+  public void putInt(int i) {
+    putByte((byte) (i >>> 24));
+    putByte((byte) (i >>> 16));
+    putByte((byte) (i >>> 8));
+    putByte((byte) i);
+  }
+
+  public void putLong(long l) {
+    putInt((int) (l >>> 32));
+    putInt((int) l);
+  }
+
+  @Override
+  public byte getByte(long offset) {
+    return chunks.get((int) (offset >>> CHUNK_BITS))[(int) (offset & CHUNK_MASK)];
+  }
+
+  @Override
+  public short getShort(long offset) {
+    return (short) (((getByte(offset) & 0xff) << 8) | (getByte(offset + 1) & 0xff));
+  }
+
+  @Override
+  public int getInt(long offset) {
+    return ((getByte(offset) & 0xff) << 24) | ((getByte(offset + 1) & 0xff) << 16)
+        | ((getByte(offset + 2) & 0xff) << 8) | (getByte(offset + 3) & 0xff);
+  }
+
+  @Override
+  public long getLong(long offset) {
+    return ((long) getInt(offset) << 32) | (getInt(offset + 4) & 0xffffffffL);
+  }
+
+  /**
+   * Discard the contents of the arena, keeping one chunk around for reuse
+   */
+  public void clear() {
+    while (chunks.size() > 1) {
+      chunks.remove(chunks.size() - 1);
+    }
+    size = 0;
+  }
+
+}
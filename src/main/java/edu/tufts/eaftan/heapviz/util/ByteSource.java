@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+/**
+ * Random access to big-endian values stored at long offsets, either in
+ * memory or in a mapped file.
+ */
+public interface ByteSource {
+
+  public byte getByte(long offset);
+
+  public short getShort(long offset);
+
+  public int getInt(long offset);
+
+  public long getLong(long offset);
+
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * An immutable directed graph in compressed sparse row form.  Vertices are
+ * the ints 0 to n-1, and the edges of each vertex are stored contiguously
+ * in int arrays, once indexed by source and once by target.  Edge labels
+ * are interned into a dictionary and stored as int ids.
+ *
+ * A CompactGraph is built in bulk with a Builder, which is much cheaper
+ * than adding edges one at a time to a Graph: there are no per-edge
+ * objects, and duplicate edges are found by sorting instead of by scanning
+ * incidence lists.  Summarizers that rewrite the graph still work on a
+ * Graph, which can be produced in one pass with toGraph().
+ */
+public class CompactGraph {
+
+  /**
+   * The label id of an edge without a label
+   */
+  public static final int NO_LABEL = -1;
+
+  private final int numVertices;
+
+  /* The edges of vertex v are at positions offsets[v] to offsets[v+1]-1 */
+  private final int[] outOffsets;
+  private final int[] outTargets;
+  private final int[] outLabels;
+  private final int[] inOffsets;
+  private final int[] inSources;
+  private final int[] inLabels;
+
+  /**
+   * Maps label ids to labels
+   */
+  private final String[] labels;
+
+  /**
+   * The number of duplicate edges the builder dropped
+   */
+  private final int numDuplicateEdges;
+
+  private CompactGraph(int numVertices, int[] outOffsets, int[] outTargets,
+      int[] outLabels, int[] inOffsets, int[] inSources, int[] inLabels,
+      String[] labels, int numDuplicateEdges) {
+    this.numVertices = numVertices;
+    this.outOffsets = outOffsets;
+    this.outTargets = outTargets;
+    this.outLabels = outLabels;
+    this.inOffsets = inOffsets;
+    this.inSources = inSources;
+    this.inLabels = inLabels;
+    this.labels = labels;
+    this.numDuplicateEdges = numDuplicateEdges;
+  }
+
+  public int getNumVertices() {
+    return numVertices;
+  }
+
+  public int getNumEdges() {
+    return outTargets.length;
+  }
+
+  /**
+   * Get the number of edges the builder dropped because an edge with the
+   * same source, target and label had already been added
+   */
+  public int getNumDuplicateEdges() {
+    return numDuplicateEdges;
+  }
+
+  public int outDegree(int v) {
+    return outOffsets[v + 1] - outOffsets[v];
+  }
+
+  public int inDegree(int v) {
+    return inOffsets[v + 1] - inOffsets[v];
+  }
+
+  /**
+   * Get the target of the i'th outgoing edge of a vertex.  Outgoing edges
+   * are sorted by target.
+   */
+  public int successor(int v, int i) {
+    return outTargets[outOffsets[v] + i];
+  }
+
+  /**
+   * Get the label id of the i'th outgoing edge of a vertex
+   */
+  public int successorLabel(int v, int i) {
+    return outLabels[outOffsets[v] + i];
+  }
+
+  /**
+   * Get the source of the i'th incoming edge of a vertex.  Incoming edges
+   * are sorted by source.
+   */
+  public int predecessor(int v, int i) {
+    return inSources[inOffsets[v] + i];
+  }
+
+  /**
+   * Get the label id of the i'th incoming edge of a vertex
+   */
+  public int predecessorLabel(int v, int i) {
+    return inLabels[inOffsets[v] + i];
+  }
+
+  /**
+   * Get the label with the given id, or null for NO_LABEL
+   */
+  public String getLabel(int labelId) {
+    return labelId == NO_LABEL ? null : labels[labelId];
+  }
+
+  /**
+   * Compute a postordering over the vertices reachable from root
+   *
+   * @return The reachable vertices in postorder
+   */
+  public int[] computePostordering(int root) {
+    int[] postordering = new int[numVertices];
+    int count = 0;
+
+    // each stack entry is a vertex and the index of its next edge to follow
+    int[] stack = new int[16];
+    int[] nextEdge = new int[16];
+    int sp = 0;
+    boolean[] visited = new boolean[numVertices];
+
+    visited[root] = true;
+    stack[sp] = root;
+    nextEdge[sp] = outOffsets[root];
+    sp++;
+    while (sp > 0) {
+      int v = stack[sp - 1];
+      int e = nextEdge[sp - 1];
+      if (e == outOffsets[v + 1]) {
+        postordering[count++] = v;
+        sp--;
+        continue;
+      }
+      nextEdge[sp - 1] = e + 1;
+      int s = outTargets[e];
+      if (!visited[s]) {
+        visited[s] = true;
+        if (sp == stack.length) {
+          stack = Arrays.copyOf(stack, sp * 2);
+          nextEdge = Arrays.copyOf(nextEdge, sp * 2);
+        }
+        stack[sp] = s;
+        nextEdge[sp] = outOffsets[s];
+        sp++;
+      }
+    }
+
+    return Arrays.copyOf(postordering, count);
+  }
+
+  /**
+   * Compute the immediate dominator of each vertex reachable from root
+   *
+   * @return The immediate dominator of each vertex, indexed by vertex.
+   * The root is its own immediate dominator, and unreachable vertices
+   * have none (-1).
+   */
+  public int[] computeDominators(int root) {
+    return computeDominatorTree(root).getDominators();
+  }
+
+  /**
+   * Compute the dominator tree of the vertices reachable from root.
+   * This is the semi-NCA variant of the Lengauer-Tarjan algorithm: the
+   * semidominators are computed as in Lengauer-Tarjan, with path
+   * compression, and then each immediate dominator is found as the nearest
+   * common ancestor of the vertex's parent and semidominator.  It runs in
+   * near-linear time with a handful of int arrays, so it can be used on
+   * graphs far too large for Graph.computeDominatorsIteratively().
+   */
+  public DominatorTree computeDominatorTree(int root) {
+
+    /* Number the reachable vertices in depth-first preorder.  Everything
+     * below works on preorder numbers, so that a vertex's ancestors in the
+     * depth-first tree always have smaller numbers.
+     */
+    int[] preorder = new int[numVertices];     // vertex -> preorder number
+    Arrays.fill(preorder, -1);
+    int[] vertex = new int[numVertices];       // preorder number -> vertex
+    int[] parent = new int[numVertices];       // by preorder number
+    int count = 0;
+
+    int[] stack = new int[16];
+    int[] nextEdge = new int[16];
+    int sp = 0;
+
+    preorder[root] = count;
+    vertex[count] = root;
+    parent[count] = 0;
+    count++;
+    stack[sp] = root;
+    nextEdge[sp] = outOffsets[root];
+    sp++;
+    while (sp > 0) {
+      int v = stack[sp - 1];
+      int e = nextEdge[sp - 1];
+      if (e == outOffsets[v + 1]) {
+        sp--;
+        continue;
+      }
+      nextEdge[sp - 1] = e + 1;
+      int s = outTargets[e];
+      if (preorder[s] < 0) {
+        preorder[s] = count;
+        vertex[count] = s;
+        parent[count] = preorder[v];
+        count++;
+        if (sp == stack.length) {
+          stack = Arrays.copyOf(stack, sp * 2);
+          nextEdge = Arrays.copyOf(nextEdge, sp * 2);
+        }
+        stack[sp] = s;
+        nextEdge[sp] = outOffsets[s];
+        sp++;
+      }
+    }
+    stack = null;
+    nextEdge = null;
+
+    /* Compute semidominators in reverse preorder.  Processed vertices are
+     * linked into a forest; label[v] is the smallest semidominator on the
+     * compressed forest path above v, or v itself if v is unprocessed.
+     */
+    int[] semi = new int[count];
+    int[] label = new int[count];
+    int[] ancestor = new int[count];
+    int[] path = new int[count];
+    for (int w = 0; w < count; w++) {
+      label[w] = w;
+      ancestor[w] = -1;
+    }
+    for (int w = count - 1; w > 0; w--) {
+      int v = vertex[w];
+      int best = w;
+      for (int e = inOffsets[v]; e < inOffsets[v + 1]; e++) {
+        int u = preorder[inSources[e]];
+        if (u >= 0) {
+          int candidate = eval(u, ancestor, label, path);
+          if (candidate < best) {
+            best = candidate;
+          }
+        }
+      }
+      semi[w] = best;
+      label[w] = best;
+      ancestor[w] = parent[w];
+    }
+    label = null;
+    ancestor = null;
+    path = null;
+
+    /* The immediate dominator is the nearest ancestor of the parent that is
+     * no deeper than the semidominator.  Ancestors are settled first, so
+     * parent[] can be overwritten with the immediate dominators in place.
+     */
+    int[] idom = parent;
+    for (int w = 1; w < count; w++) {
+      int d = idom[w];
+      while (d > semi[w]) {
+        d = idom[d];
+      }
+      idom[w] = d;
+    }
+
+    int[] dominators = new int[numVertices];
+    Arrays.fill(dominators, -1);
+    for (int w = 0; w < count; w++) {
+      dominators[vertex[w]] = vertex[idom[w]];
+    }
+
+    // preorder puts every vertex after its immediate dominator
+    return new DominatorTree(dominators, Arrays.copyOf(vertex, count));
+  }
+
+  /**
+   * Find the smallest semidominator on the forest path from v up to (but
+   * not including) its root, compressing the path as we go.  The path is
+   * compressed from the top down with an explicit stack, since recursion
+   * would overflow on long paths.
+   */
+  private static int eval(int v, int[] ancestor, int[] label, int[] path) {
+    if (ancestor[v] < 0) {
+      return label[v];
+    }
+    int sp = 0;
+    for (int u = v; ancestor[ancestor[u]] >= 0; u = ancestor[u]) {
+      path[sp++] = u;
+    }
+    while (sp > 0) {
+      int u = path[--sp];
+      int a = ancestor[u];
+      if (label[a] < label[u]) {
+        label[u] = label[a];
+      }
+      ancestor[u] = ancestor[a];
+    }
+    return label[v];
+  }
+
+  /**
+   * Produce a mutable Graph with the same edges, all of them pointer edges
+   *
+   * @param vertices The objects to use as vertices, indexed by vertex number
+   */
+  public <V> Graph<V, String> toGraph(List<V> vertices) {
+    Graph<V, String> g = new Graph<V, String>(numVertices,
+        Math.max(1, 2 * getNumEdges() / Math.max(1, numVertices)));
+    for (int v = 0; v < numVertices; v++) {
+      g.addVertex(vertices.get(v));
+    }
+    for (int v = 0; v < numVertices; v++) {
+      V from = vertices.get(v);
+      for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+        g.addPointerEdgeUnchecked(from, vertices.get(outTargets[e]), getLabel(outLabels[e]));
+      }
+    }
+    return g;
+  }
+
+
+  /**
+   * Collects vertices and edges, then builds a CompactGraph from them in
+   * one pass.  A builder can only be built once: it lets go of the edges
+   * it collected as soon as they are sorted, so they are not kept alive
+   * alongside the graph.
+   */
+  public static class Builder {
+
+    private int numVertices = 0;
+    private int numEdges = 0;
+    private int[] sources;
+    private int[] targets;
+    private int[] edgeLabels;
+    private HashMap<String, Integer> labelIds = new HashMap<String, Integer>();
+
+    /**
+     * @param expectedEdges The number of edges to make room for.  The
+     * arrays grow as needed, so this is only a hint.
+     */
+    public Builder(int expectedEdges) {
+      int capacity = Math.max(16, expectedEdges);
+      sources = new int[capacity];
+      targets = new int[capacity];
+      edgeLabels = new int[capacity];
+    }
+
+    /**
+     * Add a new vertex
+     *
+     * @return The number of the new vertex
+     */
+    public int addVertex() {
+      return numVertices++;
+    }
+
+    public int getNumVertices() {
+      return numVertices;
+    }
+
+    /**
+     * Add an edge.  Duplicate edges are dropped when the graph is built.
+     */
+    public void addEdge(int from, int to, String label) {
+      Preconditions.checkState(sources != null, "Graph has already been built");
+      if (numEdges == sources.length) {
+        int newCapacity = numEdges + (numEdges >> 1);
+        sources = Arrays.copyOf(sources, newCapacity);
+        targets = Arrays.copyOf(targets, newCapacity);
+        edgeLabels = Arrays.copyOf(edgeLabels, newCapacity);
+      }
+      sources[numEdges] = from;
+      targets[numEdges] = to;
+      edgeLabels[numEdges] = labelId(label);
+      numEdges++;
+    }
+
+    public CompactGraph build() {
+      Preconditions.checkState(sources != null, "Graph has already been built");
+      String[] labels = new String[labelIds.size()];
+      for (String label : labelIds.keySet()) {
+        labels[labelIds.get(label)] = label;
+      }
+
+      // bucket edges by source, as (target, label) keys so they sort by target
+      int[] outOffsets = new int[numVertices + 1];
+      for (int e = 0; e < numEdges; e++) {
+        outOffsets[sources[e] + 1]++;
+      }
+      for (int v = 0; v < numVertices; v++) {
+        outOffsets[v + 1] += outOffsets[v];
+      }
+      long[] keys = new long[numEdges];
+      int[] fill = Arrays.copyOf(outOffsets, numVertices);
+      for (int e = 0; e < numEdges; e++) {
+        keys[fill[sources[e]]++] = key(targets[e], edgeLabels[e]);
+      }
+      sources = null;
+      targets = null;
+      edgeLabels = null;
+      labelIds = null;
+
+      // sort each vertex's edges and squeeze out duplicates
+      int kept = 0;
+      int start = 0;
+      for (int v = 0; v < numVertices; v++) {
+        int end = outOffsets[v + 1];
+        Arrays.sort(keys, start, end);
+        outOffsets[v] = kept;
+        for (int e = start; e < end; e++) {
+          if (e == start || keys[e] != keys[e - 1]) {
+            keys[kept++] = keys[e];
+          }
+        }
+        start = end;
+      }
+      outOffsets[numVertices] = kept;
+
+      int[] outTargets = new int[kept];
+      int[] outLabels = new int[kept];
+      int[] inOffsets = new int[numVertices + 1];
+      for (int e = 0; e < kept; e++) {
+        outTargets[e] = (int) (keys[e] >>> 32);
+        outLabels[e] = (int) keys[e] - 1;
+        inOffsets[outTargets[e] + 1]++;
+      }
+      keys = null;
+      for (int v = 0; v < numVertices; v++) {
+        inOffsets[v + 1] += inOffsets[v];
+      }
+
+      // sources come out sorted because we fill in order of source
+      int[] inSources = new int[kept];
+      int[] inLabels = new int[kept];
+      fill = Arrays.copyOf(inOffsets, numVertices);
+      for (int v = 0; v < numVertices; v++) {
+        for (int e = outOffsets[v]; e < outOffsets[v + 1]; e++) {
+          int pos = fill[outTargets[e]]++;
+          inSources[pos] = v;
+          inLabels[pos] = outLabels[e];
+        }
+      }
+
+      return new CompactGraph(numVertices, outOffsets, outTargets, outLabels,
+          inOffsets, inSources, inLabels, labels, numEdges - kept);
+    }
+
+    private int labelId(String label) {
+      if (label == null) {
+        return NO_LABEL;
+      }
+      Integer id = labelIds.get(label);
+      if (id == null) {
+        id = labelIds.size();
+        labelIds.put(label, id);
+      }
+      return id;
+    }
+
+    /**
+     * Pack a target and label id into a long that sorts by target first.
+     * Label ids are shifted up by one so NO_LABEL packs as zero.
+     */
+    private static long key(int target, int labelId) {
+      return ((long) target << 32) | ((labelId + 1) & 0xffffffffL);
+    }
+
+  }
+
+}
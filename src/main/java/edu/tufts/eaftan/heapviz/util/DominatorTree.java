@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * The dominator tree of the vertices of a CompactGraph that are reachable
+ * from a root.  See CompactGraph.computeDominatorTree().
+ *
+ * Besides the immediate dominator of each vertex, the tree keeps the
+ * reachable vertices in an order in which every vertex comes after its
+ * immediate dominator, so sums over subtrees can be computed in one pass.
+ */
+public class DominatorTree {
+
+  /**
+   * The immediate dominator of each vertex, or -1 if it is unreachable
+   */
+  private final int[] dominators;
+
+  /**
+   * The reachable vertices, each after its immediate dominator.  The
+   * first one is the root.
+   */
+  private final int[] order;
+
+  DominatorTree(int[] dominators, int[] order) {
+    this.dominators = dominators;
+    this.order = order;
+  }
+
+  public int getRoot() {
+    return order[0];
+  }
+
+  /**
+   * Get the immediate dominator of a vertex.  The root is its own immediate
+   * dominator.
+   *
+   * @return The immediate dominator, or -1 if the vertex is unreachable
+   */
+  public int getDominator(int v) {
+    return dominators[v];
+  }
+
+  /**
+   * Get the immediate dominator of every vertex, indexed by vertex
+   */
+  public int[] getDominators() {
+    return dominators;
+  }
+
+  /**
+   * Get the vertices reachable from the root, each after its immediate
+   * dominator.  The root is first.
+   */
+  public int[] getOrder() {
+    return order;
+  }
+
+  /**
+   * Get the number of vertices reachable from the root
+   */
+  public int getNumReachable() {
+    return order.length;
+  }
+
+  /**
+   * Compute the retained size of each vertex: the total size of the
+   * vertices it dominates, including itself.  Each vertex's size is added
+   * to its immediate dominator's in one pass in reverse order, which
+   * visits every vertex before its dominator like a post-order walk of the
+   * tree would.
+   *
+   * @param sizes The size of each vertex, indexed by vertex
+   * @return The retained size of each vertex, or 0 if it is unreachable
+   */
+  public long[] computeRetainedSizes(long[] sizes) {
+    Preconditions.checkArgument(sizes.length == dominators.length,
+        "Need a size for each vertex");
+    long[] retained = new long[dominators.length];
+    for (int i = order.length - 1; i > 0; i--) {
+      int v = order[i];
+      retained[v] += sizes[v];
+      retained[dominators[v]] += retained[v];
+    }
+    retained[order[0]] += sizes[order[0]];
+    return retained;
+  }
+
+  /**
+   * Compute the retained size of groups of vertices: the total size of the
+   * vertices dominated by some member of the group.  A member dominated by
+   * another member of its group is already counted, so the tree is walked
+   * depth first, keeping a count of the members of each group on the
+   * current path, and a vertex's retained size is added to its group only
+   * if it is the only member on the path.
+   *
+   * @param retained The retained size of each vertex, from
+   * computeRetainedSizes()
+   * @param groups The group of each vertex, between 0 and numGroups-1, or
+   * -1 if it is in none
+   * @param numGroups The number of groups
+   * @return The retained size of each group
+   */
+  public long[] computeRetainedSizes(long[] retained, int[] groups, int numGroups) {
+    Preconditions.checkArgument(retained.length == dominators.length
+        && groups.length == dominators.length, "Need a size and group for each vertex");
+
+    // index the tree by parent; the children of v are at
+    // childOffsets[v] to childOffsets[v+1]-1
+    int n = dominators.length;
+    int[] childOffsets = new int[n + 1];
+    for (int i = 1; i < order.length; i++) {
+      childOffsets[dominators[order[i]] + 1]++;
+    }
+    for (int v = 0; v < n; v++) {
+      childOffsets[v + 1] += childOffsets[v];
+    }
+    int[] children = new int[order.length - 1];
+    int[] fill = Arrays.copyOf(childOffsets, n);
+    for (int i = 1; i < order.length; i++) {
+      int v = order[i];
+      children[fill[dominators[v]]++] = v;
+    }
+    fill = null;
+
+    long[] groupRetained = new long[numGroups];
+    int[] active = new int[numGroups];
+
+    // each stack entry is a vertex and the index of its next child to visit
+    int[] stack = new int[16];
+    int[] nextChild = new int[16];
+    int sp = 0;
+
+    int root = order[0];
+    enter(root, retained, groups, groupRetained, active);
+    stack[sp] = root;
+    nextChild[sp] = childOffsets[root];
+    sp++;
+    while (sp > 0) {
+      int v = stack[sp - 1];
+      int c = nextChild[sp - 1];
+      if (c == childOffsets[v + 1]) {
+        if (groups[v] >= 0) {
+          active[groups[v]]--;
+        }
+        sp--;
+        continue;
+      }
+      nextChild[sp - 1] = c + 1;
+      int child = children[c];
+      enter(child, retained, groups, groupRetained, active);
+      if (sp == stack.length) {
+        stack = Arrays.copyOf(stack, sp * 2);
+        nextChild = Arrays.copyOf(nextChild, sp * 2);
+      }
+      stack[sp] = child;
+      nextChild[sp] = childOffsets[child];
+      sp++;
+    }
+
+    return groupRetained;
+  }
+
+  private static void enter(int v, long[] retained, int[] groups,
+      long[] groupRetained, int[] active) {
+    int group = groups[v];
+    if (group >= 0) {
+      if (active[group] == 0) {
+        groupRetained[group] += retained[v];
+      }
+      active[group]++;
+    }
+  }
+
+}
@@ -23,6 +23,11 @@ public class Edge<V, E> {
   public E data;
   public boolean ownership;
   public boolean pointer;
+
+  /* Positions of this edge in the outgoing list of its source and the
+   * incoming list of its target, maintained by Graph */
+  int outPos = -1;
+  int inPos = -1;
   
   public Edge(V from, V to, E data, boolean pointer, boolean ownership) {
     this.from = from;
@@ -35,32 +35,53 @@ import java.util.*;
 
 public class Graph<V, E> {
 
+  /**
+   * Vertices with more than this many outgoing edges get an edge index
+   */
+  private static final int INDEX_THRESHOLD = 16;
+
   /* invariants:
    *   1) root must be in incidentEdges map
+   *   2) every edge is in the outgoing list of its source at position
+   *      outPos and in the incoming list of its target at position inPos
+   *   3) if its source has an edge index, every edge is in the index
+   *      under its target and data
    */
-  // TODO: these might need to become sets or linked lists for faster
-  // removal
-  private HashMap<V, ArrayList<Edge<V, E>>> incidentEdges;
-  //private V root;
+  private HashMap<V, Incidence<V, E>> incidentEdges;
+  private V root;
   private int avgDegree;
   private int expectedVertices;
 
+  /**
+   * Hands out ids for vertices created from this graph, for example by
+   * merging.  Shared with copies of the graph.
+   */
+  private IdAllocator idAllocator = new IdAllocator();
+
 
   //In an effort to make this as fast as possible,
   //this may not work correctly with mutable types for V,E
+  //
+  //To work on a graph without changing it, a GraphOverlay is usually
+  //cheaper, since it only stores what changes.
   public Graph<V,E> deepishCopy(){
-	  Graph<V,E> newGraph = new Graph<V,E>();
+	  Graph<V,E> newGraph = new Graph<V,E>(getNumVertices(), avgDegree);
 
-	  for(V v: incidentEdges.keySet()){
-		  newGraph.incidentEdges.put(v, new ArrayList<Edge<V,E>>());
-		  for(Edge<V,E> e:   incidentEdges.get(v)){
-			  newGraph.incidentEdges.get(v).add(e);
+	  for(V v: getVertices()){
+		  newGraph.addVertex(v);
+	  }
+	  // edges record their positions in the incidence lists, so they
+	  // cannot be shared between graphs
+	  for(V v: getVertices()){
+		  for(Edge<V,E> e: outEdges(v)){
+			  newGraph.insertEdge(new Edge<V,E>(e.from, e.to, e.data, e.pointer, e.ownership));
 		  }
 	  }
 
-	  //newGraph.root = root;
+	  newGraph.root = root;
 	  newGraph.avgDegree = avgDegree;
 	  newGraph.expectedVertices = expectedVertices;
+	  newGraph.idAllocator = idAllocator;
 
 
 	  return newGraph;
@@ -70,7 +91,7 @@ public class Graph<V, E> {
    * Creates an empty graph
    */
   public Graph() {
-    incidentEdges = new HashMap<V, ArrayList<Edge<V, E>>>();
+    incidentEdges = new HashMap<V, Incidence<V, E>>();
     avgDegree = 10;
     expectedVertices = 100;
     assert(repOK());
@@ -82,7 +103,7 @@ public class Graph<V, E> {
    * @param numVertices The (approximate) number of vertices in the graph
    */
   public Graph(int numVertices, int avgDegree) {
-    incidentEdges = new HashMap<V, ArrayList<Edge<V, E>>>(numVertices);
+    incidentEdges = new HashMap<V, Incidence<V, E>>(numVertices);
     this.avgDegree = avgDegree;
     this.expectedVertices = numVertices;
     assert(repOK());
@@ -90,11 +111,13 @@ public class Graph<V, E> {
 
   /**
    * Set the root of the graph
+   *
+   * @param root The root, or null for none
    */
   public void setRoot(V root) {
     assert(repOK());
-    assert(incidentEdges.containsKey(root));
-    //this.root = root;
+    assert(root == null || containsVertex(root));
+    this.root = root;
   }
 
   /**
@@ -115,7 +138,7 @@ public class Graph<V, E> {
     if (incidentEdges.containsKey(v))
       return false;
 
-    incidentEdges.put(v, new ArrayList<Edge<V, E>>(avgDegree));
+    incidentEdges.put(v, new Incidence<V, E>(avgDegree));
     return true;
   }
 
@@ -128,27 +151,32 @@ public class Graph<V, E> {
    */
   public boolean removeVertex(V v) {
 
-    if (!incidentEdges.containsKey(v))
+    Incidence<V, E> inc = incidentEdges.get(v);
+    if (inc == null)
       return false;
 
-    // remove edges that reference this vertex from other vertices
-    for (Edge<V, E> e : incidentEdges.get(v)) {
+    /* remove edges that reference this vertex from other vertices.  Each
+     * edge knows its position in the other vertex's list, so removal is
+     * constant time. */
+    for (Edge<V, E> e : inc.out) {
       // if self edge, can skip this
       if (e.from == e.to) {
         continue;
       }
-      if (e.from.equals(v)) {
-        incidentEdges.get(e.to).remove(e);
-      } else if (e.to.equals(v)) {
-        incidentEdges.get(e.from).remove(e);
-      } else {
-        System.err.println("Error: edge not found");
-        System.exit(1);
+      removeIncoming(incidentEdges.get(e.to), e);
+    }
+    for (Edge<V, E> e : inc.in) {
+      if (e.from == e.to) {
+        continue;
       }
+      removeOutgoing(incidentEdges.get(e.from), e);
     }
 
     // remove vertex itself
     incidentEdges.remove(v);
+    if (v.equals(root)) {
+      root = null;
+    }
 
     assert(repOK());
     return true;
@@ -167,29 +195,92 @@ public class Graph<V, E> {
       System.exit(1);
     }
 
-    Edge<V, E> newEdge = new Edge<V, E>(from, to, data, true, false);
+    if (findEdge(from, to, data) != null) {
+      throw new DuplicateEdgeException();
+    }
+    insertEdge(new Edge<V, E>(from, to, data, true, false));
+
+    assert(repOK());
+  }
+
+  /**
+   * Add a pointer edge without checking for duplicates.  Used to copy in
+   * edges that are already known to be distinct.
+   */
+  void addPointerEdgeUnchecked(V from, V to, E data) {
+    insertEdge(new Edge<V, E>(from, to, data, true, false));
+  }
 
-    boolean duplicate = false;
-    for (Edge<V, E> e : incidentEdges.get(from)) {
-      if (e.equalsToFromData(newEdge)) {
-        duplicate = true;
-        throw new DuplicateEdgeException();
+  /**
+   * Find the edge from one vertex to another with the given data
+   *
+   * @return The edge, or null if there is no such edge
+   */
+  Edge<V, E> findEdge(V from, V to, E data) {
+    Incidence<V, E> inc = incidentEdges.get(from);
+    if (inc.outIndex != null) {
+      return inc.outIndex.get(new EdgeKey(to, data));
+    }
+    for (Edge<V, E> e : inc.out) {
+      if (e.to.equals(to) &&
+          (e.data == null ? data == null : e.data.equals(data))) {
+        return e;
       }
     }
-    if (!duplicate)
-      incidentEdges.get(from).add(newEdge);
+    return null;
+  }
 
-    duplicate = false;
-    for (Edge<V, E> e : incidentEdges.get(to)) {
-      if (e.equalsToFromData(newEdge)) {
-        duplicate = true;
-        throw new DuplicateEdgeException();
+  /**
+   * Add an edge to the outgoing list of its source and the incoming list of
+   * its target, and to the edge index of its source.
+   */
+  private void insertEdge(Edge<V, E> e) {
+    Incidence<V, E> fromInc = incidentEdges.get(e.from);
+    Incidence<V, E> toInc = incidentEdges.get(e.to);
+
+    e.outPos = fromInc.out.size();
+    fromInc.out.add(e);
+    e.inPos = toInc.in.size();
+    toInc.in.add(e);
+
+    if (fromInc.outIndex != null) {
+      fromInc.outIndex.put(new EdgeKey(e.to, e.data), e);
+    } else if (fromInc.out.size() > INDEX_THRESHOLD) {
+      fromInc.outIndex = new HashMap<EdgeKey, Edge<V, E>>(fromInc.out.size() * 2);
+      for (Edge<V, E> f : fromInc.out) {
+        fromInc.outIndex.put(new EdgeKey(f.to, f.data), f);
       }
     }
-    if (!duplicate)
-      incidentEdges.get(to).add(newEdge);
+  }
 
-    assert(repOK());
+  /**
+   * Remove an edge from the outgoing list and edge index of its source, by
+   * moving the last edge in the list into its place
+   */
+  private void removeOutgoing(Incidence<V, E> inc, Edge<V, E> e) {
+    int last = inc.out.size() - 1;
+    Edge<V, E> moved = inc.out.remove(last);
+    if (moved != e) {
+      inc.out.set(e.outPos, moved);
+      moved.outPos = e.outPos;
+    }
+
+    if (inc.outIndex != null) {
+      inc.outIndex.remove(new EdgeKey(e.to, e.data));
+    }
+  }
+
+  /**
+   * Remove an edge from the incoming list of its target, by moving the last
+   * edge in the list into its place
+   */
+  private void removeIncoming(Incidence<V, E> inc, Edge<V, E> e) {
+    int last = inc.in.size() - 1;
+    Edge<V, E> moved = inc.in.remove(last);
+    if (moved != e) {
+      inc.in.set(e.inPos, moved);
+      moved.inPos = e.inPos;
+    }
   }
 
   /**
@@ -205,50 +296,70 @@ public class Graph<V, E> {
       System.exit(1);
     }
 
-    boolean found = false;
-    for (Edge<V, E> e : incidentEdges.get(from)) {
-      if (e.from.equals(from) && e.to.equals(to)) {
-        if ((e.data == null && data == null) ||
-            e.data.equals(data)) {
-          e.ownership = true;
-          found = true;
-          break;
-        }
-      }
+    Edge<V, E> e = findEdge(from, to, data);
+    if (e != null) {
+      e.ownership = true;
+    } else {
+      insertEdge(new Edge<V, E>(from, to, data, false, true));
     }
-    if (!found)
-      incidentEdges.get(from).add(new Edge<V, E>(from, to, data, false, true));
 
-    found = false;
-    for (Edge<V, E> e : incidentEdges.get(to)) {
-      if (e.from.equals(from) && e.to.equals(to)) {
-        if ((e.data == null && data == null) ||
-            e.data.equals(data)) {
-          e.ownership = true;
-          found = true;
+    assert(repOK());
+  }
+
+  /**
+   * Add an ownership edge to each vertex from its immediate dominator.  A
+   * pointer edge from the dominator, whatever its data, becomes an
+   * ownership edge too; where there is none, a new ownership edge with no
+   * data is added.  Only the incoming edges of each vertex are looked at,
+   * once, so this takes time linear in the size of the graph.
+   *
+   * @param dominators Maps vertices to their immediate dominators, as
+   * computed by computeDominators().  A vertex that is its own dominator
+   * gets no edge.
+   */
+  public void addOwnershipEdges(Map<V, V> dominators) {
+    for (Map.Entry<V, V> entry : dominators.entrySet()) {
+      V to = entry.getKey();
+      V from = entry.getValue();
+      if (from.equals(to)) {
+        continue;
+      }
+
+      Edge<V, E> edge = null;
+      List<Edge<V, E>> in = inEdges(to);
+      for (int i = 0; i < in.size(); i++) {
+        if (in.get(i).from.equals(from)) {
+          edge = in.get(i);
           break;
         }
       }
+      markOwnership(edge, from, to);
     }
-    if (!found)
-      incidentEdges.get(to).add(new Edge<V, E>(from, to, data, false, true));
-
     assert(repOK());
   }
 
   /**
-   * Remove an edge from the adjacency list of this vertex
+   * Make an edge an ownership edge, or if there is none, add an ownership
+   * edge with no data.  The caller has already looked for the edge.
    *
-   * @param vertex The vertex from which to remove this edge
-   * @param edge The edge to remove
+   * @param e The edge, or null if there is no edge from "from" to "to"
    */
-  public void removeEdge(V vertex, E edge) {
-    if (!incidentEdges.get(vertex).remove(edge)) {
-      System.err.println("Error: tried to remove edge from vertex, cannot find");
-      System.exit(1);
+  void markOwnership(Edge<V, E> e, V from, V to) {
+    if (e != null) {
+      e.ownership = true;
+    } else {
+      insertEdge(new Edge<V, E>(from, to, null, false, true));
     }
   }
 
+  /**
+   * Add a copy of an edge marked as an ownership edge, without checking
+   * for duplicates
+   */
+  void addOwnershipCopyUnchecked(Edge<V, E> e) {
+    insertEdge(new Edge<V, E>(e.from, e.to, e.data, e.pointer, true));
+  }
+
   /**
    * Get the successors of a given vertex
    */
@@ -256,17 +367,12 @@ public class Graph<V, E> {
     assert(repOK());
 
     HashSet<V> successors = new HashSet<V>(avgDegree/2);
-    if(incidentEdges == null){
-    	System.err.println("incidentEdges is null, this should not happen!");
-    }
-    else if(incidentEdges.get(v) == null){
-    	System.err.println("incidentEdges.get(v) == null, " + v.toString());
+    if(!containsVertex(v)){
+    	System.err.println("Vertex not in graph, " + v.toString());
     }
 
-    for (Edge<V, E> e : incidentEdges.get(v)) {
-      if (e.from.equals(v)) {
-        successors.add(e.to);
-      }
+    for (Edge<V, E> e : outEdges(v)) {
+      successors.add(e.to);
     }
 
     return successors;
@@ -279,10 +385,8 @@ public class Graph<V, E> {
     assert(repOK());
 
     HashSet<V> predecessors = new HashSet<V>(avgDegree/2);
-    for (Edge<V, E> e : incidentEdges.get(v)) {
-      if (e.to.equals(v)) {
-        predecessors.add(e.from);
-      }
+    for (Edge<V, E> e : inEdges(v)) {
+      predecessors.add(e.from);
     }
 
     return predecessors;
@@ -292,10 +396,19 @@ public class Graph<V, E> {
    * Get all edges incident to a given vertex
    *
    * @param v The vertex whose edges we want
-   * @return A list of Edges incident to v
+   * @return A new list of Edges incident to v.  Self edges appear once.
    */
   public List<Edge<V, E>> getEdges(V v) {
-    return incidentEdges.get(v);
+    List<Edge<V, E>> out = outEdges(v);
+    List<Edge<V, E>> in = inEdges(v);
+    ArrayList<Edge<V, E>> edges = new ArrayList<Edge<V, E>>(out.size() + in.size());
+    edges.addAll(out);
+    for (Edge<V, E> e : in) {
+      if (e.from != e.to) {
+        edges.add(e);
+      }
+    }
+    return edges;
   }
 
   /**
@@ -304,14 +417,7 @@ public class Graph<V, E> {
   public List<Edge<V, E>> getOutgoingEdges(V v) {
     assert(repOK());
 
-    ArrayList<Edge<V, E>> edges = new ArrayList<Edge<V, E>>(avgDegree/2);
-    for (Edge<V, E> e : incidentEdges.get(v)) {
-      if (e.from.equals(v)) {
-        edges.add(e);
-      }
-    }
-
-    return edges;
+    return new ArrayList<Edge<V, E>>(outEdges(v));
   }
 
   /**
@@ -320,16 +426,121 @@ public class Graph<V, E> {
   public List<Edge<V, E>> getIncomingEdges(V v) {
     assert(repOK());
 
-    ArrayList<Edge<V, E>> edges = new ArrayList<Edge<V, E>>(avgDegree/2);
-    for (Edge<V, E> e : incidentEdges.get(v)) {
-      if (e.to.equals(v)) {
-        edges.add(e);
-      }
+    return new ArrayList<Edge<V, E>>(inEdges(v));
+  }
+
+  /**
+   * Get the number of outgoing edges of a given vertex
+   */
+  public int getOutDegree(V v) {
+    return outEdges(v).size();
+  }
+
+  /**
+   * Get the number of incoming edges of a given vertex
+   */
+  public int getInDegree(V v) {
+    return inEdges(v).size();
+  }
+
+  /**
+   * Get one of the outgoing edges of a given vertex, without copying the
+   * edge list.  Together with getOutDegree this lets callers walk the edges
+   * with an int cursor:
+   *
+   *   for (int i = 0; i < g.getOutDegree(v); i++) {
+   *     Edge<V, E> e = g.getOutgoingEdge(v, i);
+   *     ...
+   *   }
+   *
+   * The order of the edges is unspecified, and changes when an edge incident
+   * to v is removed.
+   *
+   * @param i The index of the edge, from 0 to getOutDegree(v) - 1
+   */
+  public Edge<V, E> getOutgoingEdge(V v, int i) {
+    return outEdges(v).get(i);
+  }
+
+  /**
+   * Get one of the incoming edges of a given vertex, without copying the
+   * edge list.  See getOutgoingEdge.
+   *
+   * @param i The index of the edge, from 0 to getInDegree(v) - 1
+   */
+  public Edge<V, E> getIncomingEdge(V v, int i) {
+    return inEdges(v).get(i);
+  }
+
+  /**
+   * Call the visitor on the target of each outgoing edge of a given vertex.
+   * A successor reached by more than one edge is visited more than once.
+   * The graph must not be modified during the visit.
+   */
+  public void forEachSuccessor(V v, VertexVisitor<V> visitor) {
+    List<Edge<V, E>> out = outEdges(v);
+    for (int i = 0; i < out.size(); i++) {
+      visitor.visit(out.get(i).to);
     }
+  }
 
-    return edges;
+  /**
+   * Call the visitor on the source of each incoming edge of a given vertex.
+   * A predecessor with more than one edge to v is visited more than once.
+   * The graph must not be modified during the visit.
+   */
+  public void forEachPredecessor(V v, VertexVisitor<V> visitor) {
+    List<Edge<V, E>> in = inEdges(v);
+    for (int i = 0; i < in.size(); i++) {
+      visitor.visit(in.get(i).from);
+    }
+  }
+
+  /**
+   * Call the visitor on each outgoing edge of a given vertex.  The graph
+   * must not be modified during the visit.
+   */
+  public void forEachOutgoingEdge(V v, EdgeVisitor<V, E> visitor) {
+    List<Edge<V, E>> out = outEdges(v);
+    for (int i = 0; i < out.size(); i++) {
+      visitor.visit(out.get(i));
+    }
+  }
+
+  /**
+   * Call the visitor on each incoming edge of a given vertex.  The graph
+   * must not be modified during the visit.
+   */
+  public void forEachIncomingEdge(V v, EdgeVisitor<V, E> visitor) {
+    List<Edge<V, E>> in = inEdges(v);
+    for (int i = 0; i < in.size(); i++) {
+      visitor.visit(in.get(i));
+    }
+  }
+
+
+  /**
+   * Get the outgoing edges of a vertex, without copying.  The list must not
+   * be modified by the caller.
+   */
+  List<Edge<V, E>> outEdges(V v) {
+    return incidentEdges.get(v).out;
+  }
+
+  /**
+   * Get the incoming edges of a vertex, without copying.  The list must not
+   * be modified by the caller.
+   */
+  List<Edge<V, E>> inEdges(V v) {
+    return incidentEdges.get(v).in;
   }
 
+  /**
+   * Check whether a vertex is in the graph
+   */
+  public boolean containsVertex(V v) {
+    return incidentEdges.containsKey(v);
+  }
 
   /**
    * Get all vertices in the graph
@@ -350,8 +561,8 @@ public class Graph<V, E> {
     assert(repOK());
 
     HashSet<Edge<V, E>> edges = new HashSet<Edge<V, E>>(expectedVertices);
-    for (V vertex : incidentEdges.keySet()) {
-      edges.addAll(incidentEdges.get(vertex));
+    for (V v : getVertices()) {
+      edges.addAll(outEdges(v));
     }
     return edges;
   }
@@ -365,12 +576,28 @@ public class Graph<V, E> {
     return incidentEdges.size();
   }
 
+  /**
+   * Get the allocator for ids of new vertices derived from this graph
+   */
+  public IdAllocator getIdAllocator() {
+    return idAllocator;
+  }
+
+  /**
+   * Set the allocator for ids of new vertices derived from this graph
+   */
+  public void setIdAllocator(IdAllocator idAllocator) {
+    this.idAllocator = idAllocator;
+  }
+
   /**
    * Get the root node of the graph
+   *
+   * @return The root, or null if it has not been set or was removed
    */
-  //public V getRoot() {
-    //return root;
-  //}
+  public V getRoot() {
+    return root;
+  }
 
 
   /**
@@ -398,8 +625,12 @@ public class Graph<V, E> {
           visited.add(curr.node);
           worklist.push(new StackElem(State.POSTORDER, curr.node));
 
-          for (V s : getSuccessors(curr.node)) {
-            worklist.push(new StackElem(State.SCAN, s));
+          List<Edge<V, E>> out = outEdges(curr.node);
+          for (int j = 0; j < out.size(); j++) {
+            V s = out.get(j).to;
+            if (!visited.contains(s)) {
+              worklist.push(new StackElem(State.SCAN, s));
+            }
           }
         }
 
@@ -415,9 +646,73 @@ public class Graph<V, E> {
   }
 
   /**
-   * Compute the immediate dominator for each vertex
+   * Copy the edges of the graph, without their data, into a CompactGraph
+   *
+   * @param vertices Every vertex of the graph, in the order they are to be
+   * numbered in the CompactGraph
+   */
+  public CompactGraph toCompactGraph(List<V> vertices) {
+    assert(vertices.size() == getNumVertices());
+    HashMap<V, Integer> numbers = new HashMap<V, Integer>(vertices.size() * 2);
+    int numEdges = 0;
+    for (V v : vertices) {
+      numEdges += outEdges(v).size();
+    }
+    CompactGraph.Builder builder = new CompactGraph.Builder(numEdges);
+    for (V v : vertices) {
+      numbers.put(v, builder.addVertex());
+    }
+    for (int i = 0; i < vertices.size(); i++) {
+      List<Edge<V, E>> out = outEdges(vertices.get(i));
+      for (int j = 0; j < out.size(); j++) {
+        builder.addEdge(i, numbers.get(out.get(j).to), null);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Compute the immediate dominator for each vertex reachable from root.
+   * The vertices are numbered and the edges copied into a CompactGraph,
+   * which computes the dominators with the semi-NCA algorithm.
+   *
+   * @return A map from each reachable vertex to its immediate dominator.
+   * The root is its own immediate dominator.
    */
   public Map<V, V> computeDominators(V root) {
+    assert(repOK());
+
+    if (root == null) {
+      System.err.println("No root defined for graph");
+      System.exit(1);
+    }
+
+    // number the vertices with the root first
+    ArrayList<V> vertices = new ArrayList<V>(getNumVertices());
+    vertices.add(root);
+    for (V v : getVertices()) {
+      if (!v.equals(root)) {
+        vertices.add(v);
+      }
+    }
+    int[] doms = toCompactGraph(vertices).computeDominators(0);
+
+    HashMap<V, V> dominators = new HashMap<V, V>(vertices.size() * 2);
+    for (int i = 0; i < doms.length; i++) {
+      if (doms[i] >= 0) {
+        dominators.put(vertices.get(i), vertices.get(doms[i]));
+      }
+    }
+    return dominators;
+  }
+
+  /**
+   * Compute the immediate dominator for each vertex with the iterative
+   * algorithm of Cooper, Harvey and Kennedy.  Every vertex must be
+   * reachable from root.  This is much slower than computeDominators() on
+   * large graphs, and is kept as a reference to check it against.
+   */
+  public Map<V, V> computeDominatorsIteratively(V root) {
 
     // compute postordering
     // we need both maps from postorder number to vertex and
@@ -444,15 +739,14 @@ public class Graph<V, E> {
       for (int i=doms.length-2; i>=0; i--) {
 
         int new_idom = -1;
-        V firstPred = null;
-        V currVertex = postorderToVertex.get(i);
-        Set<V> preds = getPredecessors(currVertex);
+        int firstPred = -1;
+        List<Edge<V, E>> preds = inEdges(postorderToVertex.get(i));
 
         // new_idom <- first (processed) predecessor of b
-        for (V predVertex : preds) {
-          int predPostorder = vertexToPostorder.get(predVertex);
+        for (int j = 0; j < preds.size(); j++) {
+          int predPostorder = vertexToPostorder.get(preds.get(j).from);
           if (predPostorder > i) {
-            firstPred = predVertex;
+            firstPred = j;
             new_idom = predPostorder;
             break;
           }
@@ -460,13 +754,12 @@ public class Graph<V, E> {
         assert(new_idom >= 0);
 
         // for all other predecessors, p, of b
-        for (V predVertex : preds) {
-          if (!firstPred.equals(predVertex)) {
-            int predPostorder = vertexToPostorder.get(predVertex);
+        for (int j = 0; j < preds.size(); j++) {
+          if (j != firstPred) {
+            int predPostorder = vertexToPostorder.get(preds.get(j).from);
             if (doms[predPostorder] >= 0) {
               new_idom = intersect(predPostorder, new_idom, doms);
             }
-
           }
         }
 
@@ -508,21 +801,30 @@ public class Graph<V, E> {
   /**
    * Check data structure invariants
    */
-  private boolean repOK() {
+  boolean repOK() {
     // root must be in incidentEdges set
     //boolean rootValid = root == null ? true : incidentEdges.containsKey(root);
 
     // all edges in graph must be mapped correctly
     boolean edgesValid = true;
     for (V v : incidentEdges.keySet()) {
-      for (Edge e : incidentEdges.get(v)) {
-        if (!incidentEdges.containsKey(e.from) ||
-            !incidentEdges.containsKey(e.to) ||
-            !(e.to.equals(v) || e.from.equals(v))) {
+      Incidence<V, E> inc = incidentEdges.get(v);
+      for (Edge<V, E> e : inc.out) {
+        Incidence<V, E> toInc = incidentEdges.get(e.to);
+        if (!e.from.equals(v) || toInc == null ||
+            toInc.in.size() <= e.inPos || toInc.in.get(e.inPos) != e) {
+          edgesValid = false;
+          break;
+        }
+        if (inc.outIndex != null &&
+            inc.outIndex.get(new EdgeKey(e.to, e.data)) != e) {
           edgesValid = false;
           break;
         }
       }
+      if (inc.outIndex != null && inc.outIndex.size() != inc.out.size()) {
+        edgesValid = false;
+      }
     }
 
     return edgesValid;
@@ -533,6 +835,72 @@ public class Graph<V, E> {
   /**
    * Inner classes
    */
+
+  /**
+   * Called once for each vertex visited by forEachSuccessor and
+   * forEachPredecessor
+   */
+  public interface VertexVisitor<V> {
+    void visit(V v);
+  }
+
+  /**
+   * Called once for each edge visited by forEachOutgoingEdge and
+   * forEachIncomingEdge
+   */
+  public interface EdgeVisitor<V, E> {
+    void visit(Edge<V, E> e);
+  }
+
+  /**
+   * The edges incident to a vertex.  A self edge is in both lists.
+   */
+  private static class Incidence<V, E> {
+    private ArrayList<Edge<V, E>> out;
+    private ArrayList<Edge<V, E>> in;
+
+    /**
+     * Outgoing edges by target and data, once there are more than
+     * INDEX_THRESHOLD of them, so that duplicate edges can be found without
+     * scanning the list
+     */
+    private HashMap<EdgeKey, Edge<V, E>> outIndex = null;
+
+    public Incidence(int avgDegree) {
+      out = new ArrayList<Edge<V, E>>(avgDegree / 2);
+      in = new ArrayList<Edge<V, E>>(avgDegree / 2);
+    }
+  }
+
+  /**
+   * The target and data of an edge, which identify it among the outgoing
+   * edges of its source
+   */
+  private static final class EdgeKey {
+    private final Object to;
+    private final Object data;
+
+    public EdgeKey(Object to, Object data) {
+      this.to = to;
+      this.data = data;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * to.hashCode() + (data == null ? 0 : data.hashCode());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof EdgeKey)) {
+        return false;
+      }
+      EdgeKey other = (EdgeKey) obj;
+      return to.equals(other.to) &&
+          (data == null ? other.data == null : data.equals(other.data));
+    }
+  }
+
   private class StackElem {
     private State state;
     private V node;
@@ -0,0 +1,600 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A graph that starts out as a view of another graph and records only the
+ * changes made to it.  The base graph is shared, not copied, and must not
+ * be changed while the overlay is in use; several overlays may share one
+ * base.
+ *
+ * The overlay keeps:
+ *   - the base vertices that were removed
+ *   - the base edges that were replaced, when an ownership edge is added on
+ *     top of a base pointer edge
+ *   - its own graph of added vertices and edges.  Base vertices that have
+ *     added edges are in it too.
+ *
+ * The edge lists of a vertex whose edges differ from the base are put
+ * together when first asked for.  From then on they are kept up to date
+ * as edges are added and hidden, so a vertex that changes often is not
+ * rebuilt from the base each time.  Reading an overlay can therefore
+ * change it, so an overlay must not be read from more than one thread at
+ * a time.
+ */
+public class GraphOverlay<V, E> extends Graph<V, E> {
+
+  private final Graph<V, E> base;
+
+  /**
+   * Base vertices that are not in the overlay.  Their base edges are
+   * hidden.
+   */
+  private final HashSet<V> removed = new HashSet<V>();
+
+  /**
+   * Base edges that are hidden because the overlay has its own version
+   */
+  private final Set<Edge<V, E>> replaced =
+      Collections.newSetFromMap(new IdentityHashMap<Edge<V, E>, Boolean>());
+
+  /**
+   * Added vertices and edges
+   */
+  private final Graph<V, E> delta = new Graph<V, E>();
+
+  /**
+   * Vertices in delta that are not visible base vertices
+   */
+  private final HashSet<V> added = new HashSet<V>();
+
+  /**
+   * Vertices whose edge lists differ from the base
+   */
+  private final HashSet<V> changed = new HashSet<V>();
+
+  /**
+   * Edge lists of changed vertices, built when needed
+   */
+  private final HashMap<V, ArrayList<Edge<V, E>>> outCache =
+      new HashMap<V, ArrayList<Edge<V, E>>>();
+  private final HashMap<V, ArrayList<Edge<V, E>>> inCache =
+      new HashMap<V, ArrayList<Edge<V, E>>>();
+
+  /**
+   * The position of each edge in the cached outgoing list of its source and
+   * the cached incoming list of its target, so it can be removed from them
+   * in constant time.  The positions the edge keeps itself belong to the
+   * graph that owns it.
+   */
+  private final IdentityHashMap<Edge<V, E>, Integer> outCachePos =
+      new IdentityHashMap<Edge<V, E>, Integer>();
+  private final IdentityHashMap<Edge<V, E>, Integer> inCachePos =
+      new IdentityHashMap<Edge<V, E>, Integer>();
+
+  public GraphOverlay(Graph<V, E> base) {
+    this.base = base;
+    setIdAllocator(base.getIdAllocator());
+    setRoot(base.getRoot());
+  }
+
+  private boolean inBase(V v) {
+    return base.containsVertex(v) && !removed.contains(v);
+  }
+
+  private boolean visible(Edge<V, E> e) {
+    return !removed.contains(e.from) && !removed.contains(e.to) && !replaced.contains(e);
+  }
+
+  /**
+   * Record that the edges of v differ from the base.  If v's lists are
+   * cached, the caller keeps them up to date.
+   */
+  private void touch(V v) {
+    changed.add(v);
+  }
+
+  /**
+   * Add an edge that was just added to delta to the cached lists it
+   * belongs in
+   */
+  private void cacheAdded(Edge<V, E> e) {
+    ArrayList<Edge<V, E>> out = outCache.get(e.from);
+    if (out != null) {
+      append(out, outCachePos, e);
+    }
+    ArrayList<Edge<V, E>> in = inCache.get(e.to);
+    if (in != null) {
+      append(in, inCachePos, e);
+    }
+  }
+
+  /**
+   * Add the edges delta has added to the outgoing list of from since it
+   * had the given out degree
+   */
+  private void cacheAddedSince(V from, int outDegree) {
+    List<Edge<V, E>> out = delta.outEdges(from);
+    for (int i = outDegree; i < out.size(); i++) {
+      cacheAdded(out.get(i));
+    }
+  }
+
+  /**
+   * Remove an edge that is no longer visible from the cached lists it is in
+   */
+  private void cacheHidden(Edge<V, E> e) {
+    ArrayList<Edge<V, E>> out = outCache.get(e.from);
+    if (out != null) {
+      remove(out, outCachePos, e);
+    }
+    ArrayList<Edge<V, E>> in = inCache.get(e.to);
+    if (in != null) {
+      remove(in, inCachePos, e);
+    }
+  }
+
+  private static <V, E> void append(ArrayList<Edge<V, E>> edges,
+      IdentityHashMap<Edge<V, E>, Integer> positions, Edge<V, E> e) {
+    positions.put(e, edges.size());
+    edges.add(e);
+  }
+
+  /**
+   * Remove an edge by moving the last edge in the list into its place, as
+   * Graph does
+   */
+  private static <V, E> void remove(ArrayList<Edge<V, E>> edges,
+      IdentityHashMap<Edge<V, E>, Integer> positions, Edge<V, E> e) {
+    Integer pos = positions.remove(e);
+    if (pos == null) {
+      return;
+    }
+    Edge<V, E> moved = edges.remove(edges.size() - 1);
+    if (moved != e) {
+      edges.set(pos, moved);
+      positions.put(moved, pos);
+    }
+  }
+
+  /**
+   * Drop the cached lists of a vertex
+   */
+  private void uncache(V v) {
+    ArrayList<Edge<V, E>> out = outCache.remove(v);
+    if (out != null) {
+      for (Edge<V, E> e : out) {
+        outCachePos.remove(e);
+      }
+    }
+    ArrayList<Edge<V, E>> in = inCache.remove(v);
+    if (in != null) {
+      for (Edge<V, E> e : in) {
+        inCachePos.remove(e);
+      }
+    }
+  }
+
+  /**
+   * Put together the outgoing edges of v from the visible base edges and
+   * the added ones
+   */
+  private ArrayList<Edge<V, E>> buildOutEdges(V v) {
+    ArrayList<Edge<V, E>> edges = new ArrayList<Edge<V, E>>();
+    if (inBase(v)) {
+      for (Edge<V, E> e : base.outEdges(v)) {
+        if (visible(e)) {
+          edges.add(e);
+        }
+      }
+    }
+    if (delta.containsVertex(v)) {
+      edges.addAll(delta.outEdges(v));
+    }
+    return edges;
+  }
+
+  /**
+   * Put together the incoming edges of v from the visible base edges and
+   * the added ones
+   */
+  private ArrayList<Edge<V, E>> buildInEdges(V v) {
+    ArrayList<Edge<V, E>> edges = new ArrayList<Edge<V, E>>();
+    if (inBase(v)) {
+      for (Edge<V, E> e : base.inEdges(v)) {
+        if (visible(e)) {
+          edges.add(e);
+        }
+      }
+    }
+    if (delta.containsVertex(v)) {
+      edges.addAll(delta.inEdges(v));
+    }
+    return edges;
+  }
+
+  /**
+   * Make sure v is in delta, so edges can be added to it
+   */
+  private void addToDelta(V v) {
+    delta.addVertex(v);
+  }
+
+  @Override
+  List<Edge<V, E>> outEdges(V v) {
+    if (!changed.contains(v)) {
+      return base.outEdges(v);
+    }
+    ArrayList<Edge<V, E>> edges = outCache.get(v);
+    if (edges == null) {
+      edges = buildOutEdges(v);
+      for (int i = 0; i < edges.size(); i++) {
+        outCachePos.put(edges.get(i), i);
+      }
+      outCache.put(v, edges);
+    }
+    return edges;
+  }
+
+  @Override
+  List<Edge<V, E>> inEdges(V v) {
+    if (!changed.contains(v)) {
+      return base.inEdges(v);
+    }
+    ArrayList<Edge<V, E>> edges = inCache.get(v);
+    if (edges == null) {
+      edges = buildInEdges(v);
+      for (int i = 0; i < edges.size(); i++) {
+        inCachePos.put(edges.get(i), i);
+      }
+      inCache.put(v, edges);
+    }
+    return edges;
+  }
+
+  @Override
+  public boolean containsVertex(V v) {
+    return added.contains(v) || inBase(v);
+  }
+
+  @Override
+  public boolean addVertex(V v) {
+    if (containsVertex(v)) {
+      return false;
+    }
+    addToDelta(v);
+    added.add(v);
+    touch(v);
+    return true;
+  }
+
+  @Override
+  public boolean removeVertex(V v) {
+    if (!containsVertex(v)) {
+      return false;
+    }
+
+    if (v.equals(getRoot())) {
+      setRoot(null);
+    }
+
+    // the edges of v disappear from the lists of its neighbours
+    for (Edge<V, E> e : outEdges(v)) {
+      if (!e.to.equals(v)) {
+        touch(e.to);
+        ArrayList<Edge<V, E>> in = inCache.get(e.to);
+        if (in != null) {
+          remove(in, inCachePos, e);
+        }
+      }
+    }
+    for (Edge<V, E> e : inEdges(v)) {
+      if (!e.from.equals(v)) {
+        touch(e.from);
+        ArrayList<Edge<V, E>> out = outCache.get(e.from);
+        if (out != null) {
+          remove(out, outCachePos, e);
+        }
+      }
+    }
+
+    if (base.containsVertex(v)) {
+      removed.add(v);
+    }
+    delta.removeVertex(v);
+    added.remove(v);
+    changed.remove(v);
+    uncache(v);
+    return true;
+  }
+
+  @Override
+  Edge<V, E> findEdge(V from, V to, E data) {
+    if (delta.containsVertex(from)) {
+      Edge<V, E> e = delta.findEdge(from, to, data);
+      if (e != null) {
+        return e;
+      }
+    }
+    if (inBase(from) && inBase(to)) {
+      Edge<V, E> e = base.findEdge(from, to, data);
+      if (e != null && !replaced.contains(e)) {
+        return e;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void addEdge(V from, V to, E data) throws DuplicateEdgeException {
+    if (!containsVertex(from) || !containsVertex(to)) {
+      System.err.println("Error: adding an edge to vertices that don't exist!");
+      System.exit(1);
+    }
+
+    if (findEdge(from, to, data) != null) {
+      throw new DuplicateEdgeException();
+    }
+    addToDelta(from);
+    addToDelta(to);
+    int outDegree = delta.getOutDegree(from);
+    delta.addEdge(from, to, data);
+    touch(from);
+    touch(to);
+    cacheAddedSince(from, outDegree);
+  }
+
+  @Override
+  void addPointerEdgeUnchecked(V from, V to, E data) {
+    addToDelta(from);
+    addToDelta(to);
+    int outDegree = delta.getOutDegree(from);
+    delta.addPointerEdgeUnchecked(from, to, data);
+    touch(from);
+    touch(to);
+    cacheAddedSince(from, outDegree);
+  }
+
+  @Override
+  public void addOwnershipEdge(V from, V to, E data) {
+    if (!containsVertex(from) || !containsVertex(to)) {
+      System.err.println("Error: adding an edge to vertices that don't exist!");
+      System.exit(1);
+    }
+
+    addToDelta(from);
+    addToDelta(to);
+    int outDegree = delta.getOutDegree(from);
+    if (delta.findEdge(from, to, data) == null && inBase(from) && inBase(to)) {
+      Edge<V, E> e = base.findEdge(from, to, data);
+      if (e != null && !replaced.contains(e)) {
+        // hide the base edge behind our own copy rather than change it
+        replaced.add(e);
+        cacheHidden(e);
+        if (e.pointer) {
+          delta.addPointerEdgeUnchecked(from, to, data);
+        }
+      }
+    }
+    delta.addOwnershipEdge(from, to, data);
+    touch(from);
+    touch(to);
+    cacheAddedSince(from, outDegree);
+  }
+
+  @Override
+  void markOwnership(Edge<V, E> e, V from, V to) {
+    if (e != null && isDeltaEdge(e)) {
+      e.ownership = true;
+      return;
+    }
+
+    addToDelta(from);
+    addToDelta(to);
+    int outDegree = delta.getOutDegree(from);
+    if (e != null) {
+      // hide the base edge behind our own copy rather than change it
+      replaced.add(e);
+      cacheHidden(e);
+      delta.addOwnershipCopyUnchecked(e);
+    } else {
+      delta.markOwnership(null, from, to);
+    }
+    touch(from);
+    touch(to);
+    cacheAddedSince(from, outDegree);
+  }
+
+  /**
+   * Is this edge one of ours rather than the base's?  Edges know their
+   * position in the incoming list of their target, so this takes constant
+   * time.
+   */
+  private boolean isDeltaEdge(Edge<V, E> e) {
+    if (!delta.containsVertex(e.to)) {
+      return false;
+    }
+    List<Edge<V, E>> in = delta.inEdges(e.to);
+    return e.inPos < in.size() && in.get(e.inPos) == e;
+  }
+
+  /**
+   * Check data structure invariants: the base and delta are consistent,
+   * the overlay's records of what changed agree with them, and each cached
+   * edge list holds the edges it would if it were built again
+   */
+  @Override
+  boolean repOK() {
+    // called by the Graph constructor, before the overlay is set up
+    if (delta == null) {
+      return true;
+    }
+    if (!base.repOK() || !delta.repOK()) {
+      return false;
+    }
+
+    for (V v : removed) {
+      if (!base.containsVertex(v) || added.contains(v)) {
+        return false;
+      }
+    }
+    for (V v : added) {
+      if (!delta.containsVertex(v) || inBase(v)) {
+        return false;
+      }
+    }
+    for (V v : delta.getVertices()) {
+      if (!containsVertex(v) || !changed.contains(v)) {
+        return false;
+      }
+    }
+    for (V v : changed) {
+      if (!containsVertex(v)) {
+        return false;
+      }
+    }
+    for (Edge<V, E> e : replaced) {
+      if (!base.containsVertex(e.from)) {
+        return false;
+      }
+      List<Edge<V, E>> out = base.outEdges(e.from);
+      if (out.size() <= e.outPos || out.get(e.outPos) != e) {
+        return false;
+      }
+    }
+
+    int numOut = 0;
+    for (V v : outCache.keySet()) {
+      ArrayList<Edge<V, E>> edges = outCache.get(v);
+      if (!changed.contains(v) || !sameEdges(edges, outCachePos, buildOutEdges(v))) {
+        return false;
+      }
+      numOut += edges.size();
+    }
+    int numIn = 0;
+    for (V v : inCache.keySet()) {
+      ArrayList<Edge<V, E>> edges = inCache.get(v);
+      if (!changed.contains(v) || !sameEdges(edges, inCachePos, buildInEdges(v))) {
+        return false;
+      }
+      numIn += edges.size();
+    }
+    if (numOut != outCachePos.size() || numIn != inCachePos.size()) {
+      return false;
+    }
+
+    return getRoot() == null || containsVertex(getRoot());
+  }
+
+  /**
+   * Does a cached list hold the same edges as a freshly built one, in any
+   * order, with the right positions?
+   */
+  private static <V, E> boolean sameEdges(ArrayList<Edge<V, E>> cached,
+      IdentityHashMap<Edge<V, E>, Integer> positions, List<Edge<V, E>> built) {
+    if (cached.size() != built.size()) {
+      return false;
+    }
+    Set<Edge<V, E>> expected =
+        Collections.newSetFromMap(new IdentityHashMap<Edge<V, E>, Boolean>());
+    expected.addAll(built);
+    for (int i = 0; i < cached.size(); i++) {
+      Edge<V, E> e = cached.get(i);
+      if (!expected.contains(e) || !Integer.valueOf(i).equals(positions.get(e))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public Set<V> getVertices() {
+    return new AbstractSet<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        return new VertexIterator();
+      }
+
+      @Override
+      public int size() {
+        return getNumVertices();
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public boolean contains(Object o) {
+        return containsVertex((V) o);
+      }
+    };
+  }
+
+  @Override
+  public int getNumVertices() {
+    return base.getNumVertices() - removed.size() + added.size();
+  }
+
+  /**
+   * Iterates over the visible base vertices, then the added ones
+   */
+  private class VertexIterator implements Iterator<V> {
+    private Iterator<V> baseIt = base.getVertices().iterator();
+    private Iterator<V> addedIt = added.iterator();
+    private V next = advance();
+
+    private V advance() {
+      while (baseIt.hasNext()) {
+        V v = baseIt.next();
+        if (!removed.contains(v)) {
+          return v;
+        }
+      }
+      return addedIt.hasNext() ? addedIt.next() : null;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next != null;
+    }
+
+    @Override
+    public V next() {
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      V v = next;
+      next = advance();
+      return v;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+}
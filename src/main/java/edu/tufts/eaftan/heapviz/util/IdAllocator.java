@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out ids for new vertices, in sequence, so that the same input gives
+ * the same ids.  Each graph has its own allocator, which is shared with the
+ * graphs derived from it, so analyses running at the same time do not
+ * interfere with each other.  Safe for concurrent use.
+ */
+public class IdAllocator {
+
+  /**
+   * The first id handed out by an allocator that is not told which ids are
+   * taken, far above any heap address
+   */
+  public static final long DEFAULT_FIRST_ID = 1L << 62;
+
+  private final AtomicLong next;
+
+  public IdAllocator() {
+    this(DEFAULT_FIRST_ID);
+  }
+
+  /**
+   * @param firstId The first id to hand out.  Ids below it are assumed to
+   *                be taken, for example by the objects in a heap dump.
+   */
+  public IdAllocator(long firstId) {
+    next = new AtomicLong(firstId);
+  }
+
+  public long nextId() {
+    return next.getAndIncrement();
+  }
+
+}
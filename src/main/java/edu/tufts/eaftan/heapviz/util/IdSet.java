@@ -0,0 +1,169 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An immutable set of object ids, stored sorted and delta-encoded as
+ * varints.  Ids of objects that sit close together in the heap usually
+ * differ by little, so a set takes one or two bytes per id rather than
+ * eight.
+ */
+public final class IdSet {
+
+  private final byte[] data;
+  private final int size;
+
+  private IdSet(byte[] data, int size) {
+    this.data = data;
+    this.size = size;
+  }
+
+  /**
+   * Create a set from an array of ids, in any order and possibly with
+   * duplicates.  The array is not modified.
+   */
+  public static IdSet of(long[] ids) {
+    long[] sorted = ids.clone();
+    Arrays.sort(sorted);
+    int len = 0;
+    for (int i = 0; i < sorted.length; i++) {
+      if (len == 0 || sorted[len - 1] != sorted[i]) {
+        sorted[len++] = sorted[i];
+      }
+    }
+    return encode(sorted, len);
+  }
+
+  /**
+   * Create the union of some sorted arrays of distinct ids.  The arrays are
+   * merged pairwise in rounds, so the total cost is O(n log k) for n ids in
+   * k arrays, even when most of the arrays hold a single id.
+   */
+  public static IdSet union(List<long[]> parts) {
+    if (parts.isEmpty()) {
+      return encode(new long[0], 0);
+    }
+
+    ArrayList<long[]> round = new ArrayList<long[]>(parts);
+    while (round.size() > 1) {
+      ArrayList<long[]> next = new ArrayList<long[]>((round.size() + 1) / 2);
+      for (int i = 0; i + 1 < round.size(); i += 2) {
+        next.add(merge(round.get(i), round.get(i + 1)));
+      }
+      if (round.size() % 2 == 1) {
+        next.add(round.get(round.size() - 1));
+      }
+      round = next;
+    }
+    long[] ids = round.get(0);
+    return encode(ids, ids.length);
+  }
+
+  /**
+   * Merge two sorted arrays of distinct ids, dropping ids that are in both
+   */
+  private static long[] merge(long[] a, long[] b) {
+    long[] out = new long[a.length + b.length];
+    int i = 0;
+    int j = 0;
+    int len = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        out[len++] = a[i++];
+      } else if (a[i] > b[j]) {
+        out[len++] = b[j++];
+      } else {
+        out[len++] = a[i++];
+        j++;
+      }
+    }
+    while (i < a.length) {
+      out[len++] = a[i++];
+    }
+    while (j < b.length) {
+      out[len++] = b[j++];
+    }
+    return len == out.length ? out : Arrays.copyOf(out, len);
+  }
+
+  /**
+   * Encode the first len ids of a sorted array.  The first id is zigzag
+   * encoded, since ids read from 4-byte HPROF files may be negative; the
+   * rest are stored as the unsigned difference from the previous id.
+   */
+  private static IdSet encode(long[] ids, int len) {
+    byte[] out = new byte[Math.max(16, len * 2)];
+    int pos = 0;
+    long prev = 0;
+    for (int i = 0; i < len; i++) {
+      long v = (i == 0) ? (ids[0] << 1) ^ (ids[0] >> 63) : ids[i] - prev;
+      prev = ids[i];
+      if (out.length - pos < 10) {
+        out = Arrays.copyOf(out, out.length * 2);
+      }
+      while ((v & ~0x7FL) != 0) {
+        out[pos++] = (byte) ((v & 0x7F) | 0x80);
+        v >>>= 7;
+      }
+      out[pos++] = (byte) v;
+    }
+    return new IdSet(Arrays.copyOf(out, pos), len);
+  }
+
+  /**
+   * Get the number of ids in the set
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Get the number of bytes used to store the ids
+   */
+  public int encodedLength() {
+    return data.length;
+  }
+
+  /**
+   * Decode the set
+   *
+   * @return The ids, sorted
+   */
+  public long[] toArray() {
+    long[] ids = new long[size];
+    int pos = 0;
+    long prev = 0;
+    for (int i = 0; i < size; i++) {
+      long v = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[pos++];
+        v |= (long) (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      prev = (i == 0) ? (v >>> 1) ^ -(v & 1) : prev + v;
+      ids[i] = prev;
+    }
+    return ids;
+  }
+
+}
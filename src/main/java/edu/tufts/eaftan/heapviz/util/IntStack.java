@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.util.Arrays;
+
+/**
+ * A stack of primitive ints, for worklists that would otherwise box every
+ * element.
+ */
+public class IntStack {
+
+  private int[] elems;
+  private int size = 0;
+
+  public IntStack() {
+    this(16);
+  }
+
+  public IntStack(int initialCapacity) {
+    elems = new int[Math.max(1, initialCapacity)];
+  }
+
+  public void push(int i) {
+    if (size == elems.length) {
+      elems = Arrays.copyOf(elems, size * 2);
+    }
+    elems[size++] = i;
+  }
+
+  public int pop() {
+    if (size == 0) {
+      throw new IllegalStateException("Stack is empty");
+    }
+    return elems[--size];
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+}
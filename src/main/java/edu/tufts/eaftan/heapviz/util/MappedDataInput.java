@@ -0,0 +1,271 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A DataInput that reads a file through memory-mapped buffers instead of
+ * copying it through stream buffers.  A single MappedByteBuffer cannot
+ * address more than 2 GB, so the file is mapped as a sequence of chunks.
+ *
+ * Besides sequential reads, the file can be read at any offset through the
+ * ByteSource methods.  This lets a handler remember where a record's payload
+ * lives in the file and decode it later, rather than keeping a decoded copy.
+ */
+public class MappedDataInput implements DataInput, ByteSource, Closeable {
+
+  private static final int DEFAULT_CHUNK_BITS = 30;
+
+  private final int chunkBits;
+  private final long chunkSize;
+  private final long chunkMask;
+
+  private RandomAccessFile file;
+  private MappedByteBuffer[] chunks;
+  private long length;
+
+  /**
+   * The offset of the next byte to be read sequentially
+   */
+  private long position = 0;
+
+  public MappedDataInput(File f) throws IOException {
+    this(f, DEFAULT_CHUNK_BITS);
+  }
+
+  /**
+   * Map a file in chunks of 2^chunkBits bytes.  Chunks smaller than the
+   * default are only useful to test reads that span two chunks.
+   */
+  public MappedDataInput(File f, int chunkBits) throws IOException {
+    Preconditions.checkArgument(chunkBits >= 3 && chunkBits <= DEFAULT_CHUNK_BITS,
+        "Chunks must hold at least a long and be addressable by an int");
+    this.chunkBits = chunkBits;
+    this.chunkSize = 1L << chunkBits;
+    this.chunkMask = chunkSize - 1;
+
+    file = new RandomAccessFile(f, "r");
+    FileChannel channel = file.getChannel();
+    length = channel.size();
+
+    int numChunks = (int) ((length + chunkSize - 1) >>> chunkBits);
+    chunks = new MappedByteBuffer[numChunks];
+    for (int i = 0; i < numChunks; i++) {
+      long start = (long) i << chunkBits;
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+          Math.min(chunkSize, length - start));
+    }
+  }
+
+  /**
+   * Get the offset of the next byte to be read sequentially
+   */
+  public long position() {
+    return position;
+  }
+
+  /**
+   * Get the length of the file in bytes
+   */
+  public long length() {
+    return length;
+  }
+
+  @Override
+  public void close() throws IOException {
+    chunks = null;
+    file.close();
+  }
+
+
+  /* Random access */
+
+  @Override
+  public byte getByte(long offset) {
+    return chunks[(int) (offset >>> chunkBits)].get((int) (offset & chunkMask));
+  }
+
+  @Override
+  public short getShort(long offset) {
+    int index = (int) (offset & chunkMask);
+    if (index + 2 <= chunkSize) {
+      return chunks[(int) (offset >>> chunkBits)].getShort(index);
+    }
+    return (short) (((getByte(offset) & 0xff) << 8) | (getByte(offset + 1) & 0xff));
+  }
+
+  @Override
+  public int getInt(long offset) {
+    int index = (int) (offset & chunkMask);
+    if (index + 4 <= chunkSize) {
+      return chunks[(int) (offset >>> chunkBits)].getInt(index);
+    }
+    return ((getShort(offset) & 0xffff) << 16) | (getShort(offset + 2) & 0xffff);
+  }
+
+  @Override
+  public long getLong(long offset) {
+    int index = (int) (offset & chunkMask);
+    if (index + 8 <= chunkSize) {
+      return chunks[(int) (offset >>> chunkBits)].getLong(index);
+    }
+    return ((long) getInt(offset) << 32) | (getInt(offset + 4) & 0xffffffffL);
+  }
+
+
+  /* Sequential access */
+
+  @Override
+  public void readFully(byte[] b) throws IOException {
+    readFully(b, 0, b.length);
+  }
+
+  @Override
+  public void readFully(byte[] b, int off, int len) throws IOException {
+    advance(len);
+    long offset = position - len;
+    while (len > 0) {
+      MappedByteBuffer chunk = chunks[(int) (offset >>> chunkBits)];
+      int index = (int) (offset & chunkMask);
+      int n = (int) Math.min(len, chunkSize - index);
+      chunk.position(index);
+      chunk.get(b, off, n);
+      offset += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  @Override
+  public int skipBytes(int n) throws IOException {
+    int skipped = (int) Math.max(0, Math.min(n, length - position));
+    position += skipped;
+    return skipped;
+  }
+
+  @Override
+  public boolean readBoolean() throws IOException {
+    return readByte() != 0;
+  }
+
+  @Override
+  public byte readByte() throws IOException {
+    return getByte(advance(1));
+  }
+
+  @Override
+  public int readUnsignedByte() throws IOException {
+    return readByte() & 0xff;
+  }
+
+  @Override
+  public short readShort() throws IOException {
+    return getShort(advance(2));
+  }
+
+  @Override
+  public int readUnsignedShort() throws IOException {
+    return readShort() & 0xffff;
+  }
+
+  @Override
+  public char readChar() throws IOException {
+    return (char) readShort();
+  }
+
+  @Override
+  public int readInt() throws IOException {
+    return getInt(advance(4));
+  }
+
+  @Override
+  public long readLong() throws IOException {
+    return getLong(advance(8));
+  }
+
+  @Override
+  public float readFloat() throws IOException {
+    return Float.intBitsToFloat(readInt());
+  }
+
+  @Override
+  public double readDouble() throws IOException {
+    return Double.longBitsToDouble(readLong());
+  }
+
+  /**
+   * Read a line of text as DataInputStream does: each byte becomes one
+   * character, and the line ends at "\n", "\r", "\r\n" or the end of the
+   * file, which is not included.
+   *
+   * @return The line, or null if the end of the file has been reached
+   */
+  @Override
+  public String readLine() throws IOException {
+    if (position == length) {
+      return null;
+    }
+    StringBuilder sb = new StringBuilder();
+    while (position < length) {
+      int c = getByte(position++) & 0xff;
+      if (c == '\n') {
+        break;
+      }
+      if (c == '\r') {
+        if (position < length && getByte(position) == '\n') {
+          position++;
+        }
+        break;
+      }
+      sb.append((char) c);
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String readUTF() throws IOException {
+    return DataInputStream.readUTF(this);
+  }
+
+  /**
+   * Move the sequential read position forward
+   *
+   * @param n The number of bytes about to be read
+   * @return The offset of the first of those bytes
+   * @throws EOFException If fewer than n bytes remain
+   */
+  private long advance(int n) throws EOFException {
+    if (position + n > length) {
+      throw new EOFException();
+    }
+    long offset = position;
+    position += n;
+    return offset;
+  }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+/**
+ * A disjoint-set forest over the ints 0..n-1, with union by size and path
+ * halving, so any sequence of operations runs in nearly linear time.
+ */
+public class UnionFind {
+
+  private int[] parent;
+  private int[] size;
+
+  public UnionFind(int n) {
+    parent = new int[n];
+    size = new int[n];
+    for (int i = 0; i < n; i++) {
+      parent[i] = i;
+      size[i] = 1;
+    }
+  }
+
+  /**
+   * Get the representative of the set containing x
+   */
+  public int find(int x) {
+    while (parent[x] != x) {
+      parent[x] = parent[parent[x]];
+      x = parent[x];
+    }
+    return x;
+  }
+
+  /**
+   * Merge the sets containing a and b
+   *
+   * @return True if a and b were in different sets
+   */
+  public boolean union(int a, int b) {
+    int ra = find(a);
+    int rb = find(b);
+    if (ra == rb) {
+      return false;
+    }
+    if (size[ra] < size[rb]) {
+      int tmp = ra;
+      ra = rb;
+      rb = tmp;
+    }
+    parent[rb] = ra;
+    size[ra] += size[rb];
+    return true;
+  }
+
+  /**
+   * Get the number of elements in the set containing x
+   */
+  public int size(int x) {
+    return size[find(x)];
+  }
+
+}
@@ -24,12 +24,11 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 
 import org.junit.After;
-import org.junit.Before;
 import org.junit.Test;
 
 import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.SummarizeHandler;
-import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
 import edu.tufts.eaftan.heapviz.summarizer.AllocSiteSummarizer;
+import edu.tufts.eaftan.heapviz.summarizer.DominatorSetSummarizer;
 import edu.tufts.eaftan.heapviz.summarizer.IdentitySummarizer;
 import edu.tufts.eaftan.heapviz.summarizer.Softvis2010Summarizer;
 import edu.tufts.eaftan.heapviz.summarizer.TypeGraphSummarizer;
@@ -43,11 +42,6 @@ public class SummarizersTest {
 
   private static final String hprofFileRelativePath = "java.hprof";
 
-  @Before
-  public void setUp() {
-    Vertex.clearIdsInUse();
-  }
-
   @Test
   public void allocSiteSummarizerDoesntCrash() throws Exception {
     RecordHandler summarizeHandler = new SummarizeHandler(
@@ -55,6 +49,13 @@ public class SummarizersTest {
     runParser(summarizeHandler);
   }
 
+  @Test
+  public void dominatorSetSummarizerDoesntCrash() throws Exception {
+    RecordHandler summarizeHandler = new SummarizeHandler(
+        true, false, true, new DominatorSetSummarizer());
+    runParser(summarizeHandler);
+  }
+
   @Test
   public void identitySummarizerDoesntCrash() throws Exception {
     RecordHandler summarizeHandler = new SummarizeHandler(
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.histogramhandler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Constant;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.InstanceField;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Static;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Type;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Value;
+
+/**
+ * Checks the counts, sizes and order of the class histogram.
+ */
+public class HistogramHandlerTest {
+
+  private static final long A = 100;
+  private static final long B = 101;
+  private static final long C = 102;
+  private static final long B_ARRAY = 103;
+
+  private HistogramHandler handler;
+
+  @Before
+  public void setUp() {
+    handler = new HistogramHandler();
+    handler.header("JAVA PROFILE 1.0.2", 8, 0);
+    String[] names = { "A", "B", "C", "[LB;" };
+    int[] sizes = { 24, 16, 8, 0 };
+    for (int i = 0; i < names.length; i++) {
+      handler.stringInUTF8(i + 1, names[i]);
+      handler.loadClass(i + 1, A + i, 0, i + 1);
+      handler.classDump(A + i, 0, 0, 0, 0, 0, 0, 0, sizes[i], new Constant[0],
+          new Static[0], new InstanceField[0]);
+    }
+  }
+
+  @Test
+  public void classesAreSortedByBytesThenCount() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      handler.instanceDump(1 + i, 0, A, new Value<?>[0]);
+    }
+    handler.instanceDump(4, 0, B, new Value<?>[0]);
+    handler.instanceDump(5, 0, C, new Value<?>[0]);
+    handler.instanceDump(6, 0, C, new Value<?>[0]);
+    handler.objArrayDump(7, 0, B_ARRAY, new long[] { 4, 0, 0, 4 });
+    Value<?>[] chars = new Value<?>[5];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = new Value<Character>(Type.CHAR, 'x');
+    }
+    handler.primArrayDump(8, 0, (byte) 5, chars);
+
+    List<String[]> rows = rows(handler);
+    assertEquals(6, rows.size());
+    assertRow(rows.get(0), "1:", 3, 72, "A");
+    assertRow(rows.get(1), "2:", 1, 32, "[LB;");
+    // C and B both take 16 bytes, and C has more instances
+    assertRow(rows.get(2), "3:", 2, 16, "C");
+    assertRow(rows.get(3), "4:", 1, 16, "B");
+    assertRow(rows.get(4), "5:", 1, 10, Type.CHAR.toString() + "[]");
+    assertRow(rows.get(5), "Total", 8, 146, null);
+  }
+
+  @Test
+  public void countsStartOverForEachHeapDump() throws IOException {
+    handler.instanceDump(1, 0, A, new Value<?>[0]);
+    handler.primArrayDump(2, 0, (byte) 10, new Value<?>[] { new Value<Integer>(Type.INT, 1) });
+    handler.heapDumpEnd();
+
+    handler.instanceDump(3, 0, B, new Value<?>[0]);
+    List<String[]> rows = rows(handler);
+    assertEquals(2, rows.size());
+    assertRow(rows.get(0), "1:", 1, 16, "B");
+    assertRow(rows.get(1), "Total", 1, 16, null);
+  }
+
+  /**
+   * Get the rows of the histogram, split into columns, without the header
+   */
+  private static List<String[]> rows(HistogramHandler handler) throws IOException {
+    StringWriter out = new StringWriter();
+    handler.writeHistogram(out);
+    String[] lines = out.toString().split("\\r?\\n");
+    List<String[]> rows = new ArrayList<String[]>();
+    for (int i = 2; i < lines.length; i++) {
+      rows.add(lines[i].trim().split("\\s+"));
+    }
+    return rows;
+  }
+
+  private static void assertRow(String[] row, String first, long count, long bytes,
+      String className) {
+    assertEquals(first, row[0]);
+    assertEquals(count, Long.parseLong(row[1]));
+    assertEquals(bytes, Long.parseLong(row[2]));
+    assertEquals(className == null ? 3 : 4, row.length);
+    if (className != null) {
+      assertEquals(className, row[3]);
+    }
+  }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that GraphMLWriter writes the same bytes as String.getBytes with
+ * UTF-8.
+ */
+public class GraphMLWriterTest {
+
+  // one, two, three and four byte encodings
+  private static final String[] SAMPLES = {
+    "a", "<", "\u00e9", "\u00fc", "\u07ff", "\u0800", "\u20ac", "\u4e2d", "\uffff",
+    "\ud83d\ude00", "\ud834\udd1e", "\udbff\udfff"
+  };
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    file = File.createTempFile("graphml", ".xml");
+    file.deleteOnExit();
+  }
+
+  @Test
+  public void stringsAreEncodedAsUtf8() throws IOException {
+    StringBuilder expected = new StringBuilder();
+    GraphMLWriter out = open();
+    for (String s : SAMPLES) {
+      out.append(s);
+      expected.append(s);
+      if (s.length() == 1) {
+        out.append(s.charAt(0));
+        expected.append(s.charAt(0));
+      }
+    }
+    out.close();
+    assertWritten(expected.toString());
+  }
+
+  @Test
+  public void unpairedSurrogatesAreWrittenAsQuestionMarks() throws IOException {
+    String s = "a\ud800b\udc00c\udc00\ud800d\ud83d";
+    GraphMLWriter out = open();
+    out.append(s);
+    out.append('\ud800');
+    out.close();
+    assertWritten(s + "\ud800");
+  }
+
+  @Test
+  public void numbersAndBooleansAreWrittenAsText() throws IOException {
+    long[] numbers = { 0, 7, -1, 10, -10, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE };
+    StringBuilder expected = new StringBuilder();
+    GraphMLWriter out = open();
+    for (long n : numbers) {
+      out.append(n).append(' ');
+      expected.append(n).append(' ');
+    }
+    out.append(true).append(false);
+    expected.append(true).append(false);
+    out.close();
+    assertWritten(expected.toString());
+  }
+
+  @Test
+  public void writesCrossBufferBoundaries() throws IOException {
+    // small pieces, then one string longer than the buffer
+    Random random = new Random(11);
+    StringBuilder expected = new StringBuilder();
+    GraphMLWriter out = open();
+    while (expected.length() < (3 << 20)) {
+      String s = SAMPLES[random.nextInt(SAMPLES.length)];
+      long n = random.nextLong();
+      out.append(s).append(n);
+      expected.append(s).append(n);
+    }
+    StringBuilder large = new StringBuilder();
+    while (large.length() < (3 << 19)) {
+      large.append(SAMPLES[random.nextInt(SAMPLES.length)]);
+    }
+    out.append(large.toString());
+    expected.append(large);
+    out.close();
+    assertTrue(file.length() > (4 << 20));
+    assertWritten(expected.toString());
+  }
+
+  private GraphMLWriter open() throws IOException {
+    return new GraphMLWriter(new FileOutputStream(file).getChannel());
+  }
+
+  private void assertWritten(String expected) throws IOException {
+    assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8),
+        Files.readAllBytes(file.toPath()));
+  }
+
+}
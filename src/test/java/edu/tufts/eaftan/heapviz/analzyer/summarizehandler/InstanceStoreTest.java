@@ -0,0 +1,271 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.tufts.eaftan.heapviz.util.MappedDataInput;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.InstanceField;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Type;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Value;
+
+/**
+ * Checks that instances survive a round trip through the InstanceStore.
+ */
+public class InstanceStoreTest {
+
+  private static final long OBJECT_CLASS_ID = 100;
+  private static final long NODE_CLASS_ID = 101;
+
+  private HashMap<Long, Class> classIdMap;
+  private InstanceStore store;
+
+  @Before
+  public void setUp() {
+    classIdMap = new HashMap<Long, Class>();
+
+    Class object = new Class();
+    object.classObjId = OBJECT_CLASS_ID;
+    object.className = "java.lang.Object";
+    classIdMap.put(OBJECT_CLASS_ID, object);
+
+    Class node = new Class();
+    node.classObjId = NODE_CLASS_ID;
+    node.className = "Node";
+    node.superClassObjId = OBJECT_CLASS_ID;
+    node.instanceFields = new InstanceField[] {
+        new InstanceField(1, Type.OBJ), new InstanceField(2, Type.INT) };
+    classIdMap.put(NODE_CLASS_ID, node);
+
+    store = new InstanceStore(classIdMap);
+  }
+
+  @Test
+  public void objectInstanceRoundTrip() {
+    Value<?>[] values = { new Value<Long>(Type.OBJ, 7L), new Value<Integer>(Type.INT, -3) };
+    assertTrue(store.putInstance(42, 5, NODE_CLASS_ID, values));
+
+    ObjectInstance obj = (ObjectInstance) store.get(42);
+    assertEquals(42, obj.objId);
+    assertEquals(5, obj.stackTraceSerialNum);
+    assertEquals(NODE_CLASS_ID, obj.classObjId);
+    assertEquals(Type.OBJ, obj.instanceFieldValues[0].type);
+    assertEquals(7L, obj.instanceFieldValues[0].value);
+    assertEquals(-3, obj.instanceFieldValues[1].value);
+  }
+
+  @Test
+  public void arraysRoundTrip() {
+    long[] elems = { 1, 0, Long.MAX_VALUE };
+    assertTrue(store.putObjArray(1, 2, OBJECT_CLASS_ID, elems));
+    Value<?>[] chars = { new Value<Character>(Type.CHAR, 'h'), new Value<Character>(Type.CHAR, '\u00e9') };
+    assertTrue(store.putPrimArray(2, 3, (byte) 5, chars));
+    assertTrue(store.putObjArray(3, 4, OBJECT_CLASS_ID, null));
+
+    ObjectArray objArray = (ObjectArray) store.get(1);
+    assertEquals(3, objArray.elems.length);
+    assertEquals(Long.MAX_VALUE, objArray.elems[2]);
+
+    PrimArray primArray = (PrimArray) store.get(2);
+    assertEquals(Type.CHAR, primArray.elemType);
+    assertEquals('\u00e9', primArray.elems[1].value);
+
+    assertNull(((ObjectArray) store.get(3)).elems);
+  }
+
+  @Test
+  public void mappedPayloadsAreReadInPlace() throws Exception {
+    Type.setIdSize(8);
+    File file = File.createTempFile("instances", ".hprof");
+    file.deleteOnExit();
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    out.writeBytes("abc");
+    writeInstanceHeader(out, 42, 5, NODE_CLASS_ID, 12);
+    out.writeLong(7);
+    out.writeInt(-3);
+    writeArrayHeader(out, 1, 2, 3);
+    out.writeLong(OBJECT_CLASS_ID);
+    out.writeLong(1);
+    out.writeLong(0);
+    out.writeLong(Long.MAX_VALUE);
+    writeArrayHeader(out, 2, 3, 2);
+    out.writeByte(5);
+    out.writeChar('h');
+    out.writeChar('\u00e9');
+    out.close();
+
+    // 8-byte chunks, so the payloads span chunks; each put is called right
+    // after its record has been read, as the parser would
+    MappedDataInput in = new MappedDataInput(file, 3);
+    store.setMappedInput(in);
+    in.skipBytes(3 + 24);
+    Value<?>[] values = { new Value<Long>(Type.OBJ, in.readLong()),
+        new Value<Integer>(Type.INT, in.readInt()) };
+    assertTrue(store.putInstance(42, 5, NODE_CLASS_ID, values));
+    in.skipBytes(24);
+    long[] elems = { in.readLong(), in.readLong(), in.readLong() };
+    assertTrue(store.putObjArray(1, 2, OBJECT_CLASS_ID, elems));
+    in.skipBytes(17);
+    Value<?>[] chars = { new Value<Character>(Type.CHAR, in.readChar()),
+        new Value<Character>(Type.CHAR, in.readChar()) };
+    assertTrue(store.putPrimArray(2, 3, (byte) 5, chars));
+
+    ObjectInstance obj = (ObjectInstance) store.get(42);
+    assertEquals(7L, obj.instanceFieldValues[0].value);
+    assertEquals(-3, obj.instanceFieldValues[1].value);
+
+    ObjectArray objArray = (ObjectArray) store.get(1);
+    assertEquals(3, objArray.elems.length);
+    assertEquals(1, objArray.elems[0]);
+    assertEquals(Long.MAX_VALUE, objArray.elems[2]);
+    assertEquals(Long.MAX_VALUE, store.readElem(store.indexOf(1), 2));
+
+    PrimArray primArray = (PrimArray) store.get(2);
+    assertEquals('h', primArray.elems[0].value);
+    assertEquals('\u00e9', primArray.elems[1].value);
+    in.close();
+  }
+
+  @Test
+  public void mappedRecordsMustEndAtTheInputPosition() throws Exception {
+    Type.setIdSize(8);
+    File file = File.createTempFile("instances", ".hprof");
+    file.deleteOnExit();
+    DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+    writeInstanceHeader(out, 1, 2, NODE_CLASS_ID, 4);
+    out.writeInt(4);
+    out.writeInt(5);
+    writeArrayHeader(out, 3, 2, 2);
+    out.writeLong(OBJECT_CLASS_ID);
+    out.writeLong(1);
+    out.writeLong(3);
+    writeArrayHeader(out, 4, 2, 1);
+    out.writeByte(10);
+    out.writeInt(6);
+    out.close();
+
+    // the parser has read past the end of the instance
+    MappedDataInput in = new MappedDataInput(file, 3);
+    store.setMappedInput(in);
+    in.skipBytes(24);
+    Value<?>[] values = { new Value<Integer>(Type.INT, in.readInt()) };
+    in.readInt();
+    try {
+      store.putInstance(1, 2, NODE_CLASS_ID, values);
+      fail("Payload was taken from the wrong bytes");
+    } catch (IllegalStateException expected) {
+    }
+
+    // and the arrays are reported with the wrong length
+    in.skipBytes(24);
+    long[] elems = { in.readLong(), in.readLong() };
+    try {
+      store.putObjArray(3, 2, OBJECT_CLASS_ID, new long[] { elems[1] });
+      fail("Payload was taken from the wrong bytes");
+    } catch (IllegalStateException expected) {
+    }
+    in.skipBytes(17);
+    Value<?>[] ints = { new Value<Integer>(Type.INT, in.readInt()) };
+    try {
+      store.putPrimArray(4, 2, (byte) 10, new Value<?>[0]);
+      fail("Payload was taken from the wrong bytes");
+    } catch (IllegalStateException expected) {
+    }
+    assertTrue(store.putPrimArray(4, 2, (byte) 10, ints));
+    in.close();
+  }
+
+  @Test
+  public void primArraysAreCutShortByElemLimit() {
+    store.setPrimArrayElemLimit(2);
+    Value<?>[] ints = { new Value<Integer>(Type.INT, 1), new Value<Integer>(Type.INT, 2),
+        new Value<Integer>(Type.INT, 3) };
+    assertTrue(store.putPrimArray(1, 2, (byte) 10, ints));
+
+    int index = store.indexOf(1);
+    assertEquals(3, store.length(index));
+    assertEquals(2, store.readableLength(index));
+
+    PrimArray primArray = (PrimArray) store.get(1);
+    assertEquals(3, primArray.length);
+    assertEquals(2, primArray.elems.length);
+    assertEquals(2, primArray.elems[1].value);
+  }
+
+  @Test
+  public void duplicateIdsAreIgnored() {
+    assertTrue(store.putObjArray(9, 1, OBJECT_CLASS_ID, new long[] { 1 }));
+    assertFalse(store.putObjArray(9, 1, OBJECT_CLASS_ID, new long[] { 2 }));
+    assertEquals(1, ((ObjectArray) store.get(9)).elems[0]);
+    assertEquals(1, store.size());
+  }
+
+  @Test
+  public void manyInstancesAreFound() {
+    int n = 100000;
+    for (int i = 0; i < n; i++) {
+      // object ids are aligned addresses in real heap dumps
+      store.putObjArray(0x7f0000000000L + i * 16L, i, OBJECT_CLASS_ID, new long[] { i });
+    }
+    assertEquals(n, store.size());
+    for (int i = 0; i < n; i++) {
+      Instance instance = store.get(0x7f0000000000L + i * 16L);
+      assertEquals(i, instance.stackTraceSerialNum);
+    }
+    assertNull(store.get(0x7f0000000000L + 8));
+
+    store.clear();
+    assertEquals(0, store.size());
+    assertFalse(store.contains(0x7f0000000000L));
+  }
+
+  /**
+   * Write the start of an INSTANCE DUMP sub-record, with 8-byte ids
+   */
+  private static void writeInstanceHeader(DataOutputStream out, long objId,
+      int stackTraceSerialNum, long classObjId, int numBytes) throws IOException {
+    out.writeLong(objId);
+    out.writeInt(stackTraceSerialNum);
+    out.writeLong(classObjId);
+    out.writeInt(numBytes);
+  }
+
+  /**
+   * Write the id, serial number and length that start an OBJECT ARRAY DUMP
+   * or PRIMITIVE ARRAY DUMP sub-record, with 8-byte ids
+   */
+  private static void writeArrayHeader(DataOutputStream out, long objId,
+      int stackTraceSerialNum, int length) throws IOException {
+    out.writeLong(objId);
+    out.writeInt(stackTraceSerialNum);
+    out.writeInt(length);
+  }
+
+}
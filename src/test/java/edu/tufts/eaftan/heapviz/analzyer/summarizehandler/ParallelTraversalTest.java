@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.tufts.eaftan.heapviz.summarizer.Summarizer;
+import edu.tufts.eaftan.heapviz.util.Edge;
+import edu.tufts.eaftan.heapviz.util.Graph;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Constant;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.InstanceField;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Static;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Type;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Value;
+
+/**
+ * Checks that building the graph with several threads gives the same
+ * vertices and edges as building it with one.
+ */
+public class ParallelTraversalTest {
+
+  private static final long NODE_CLASS_ID = 100;
+  private static final long ARRAY_CLASS_ID = 101;
+  private static final long ARRAY_ID = 1;
+  private static final long FIRST_NODE_ID = 1000;
+
+  /**
+   * Keeps the graph it is given instead of summarizing it
+   */
+  private static class CapturingSummarizer implements Summarizer {
+    Graph<Vertex, String> graph;
+
+    @Override
+    public Graph<Vertex, String> summarize(Graph<Vertex, String> g) {
+      graph = g;
+      return g;
+    }
+  }
+
+  @Test
+  public void parallelTraversalBuildsTheSameGraph() {
+    // the array holds more references than one task scans before splitting
+    List<String> sequential = buildGraph(1, 5000);
+    List<String> parallel = buildGraph(4, 5000);
+    assertEquals(sequential, parallel);
+    assertTrue(sequential.size() > 5000);
+  }
+
+  /**
+   * Build the graph of a random heap and describe its vertices and edges
+   */
+  private static List<String> buildGraph(int numThreads, int numNodes) {
+    CapturingSummarizer capture = new CapturingSummarizer();
+    SummarizeHandler handler = new SummarizeHandler(true, false, true, capture);
+    handler.setNumThreads(numThreads);
+
+    handler.stringInUTF8(1, "Node");
+    handler.stringInUTF8(2, "[LNode;");
+    handler.stringInUTF8(3, "left");
+    handler.stringInUTF8(4, "right");
+    handler.loadClass(1, NODE_CLASS_ID, 0, 1);
+    handler.loadClass(2, ARRAY_CLASS_ID, 0, 2);
+    handler.stackTrace(1, 1, 0, new long[0]);
+    handler.heapDump();
+    handler.classDump(NODE_CLASS_ID, 1, 0, 0, 0, 0, 0, 0, 16, new Constant[0],
+        new Static[0], new InstanceField[] {
+            new InstanceField(3, Type.OBJ), new InstanceField(4, Type.OBJ) });
+    handler.classDump(ARRAY_CLASS_ID, 1, 0, 0, 0, 0, 0, 0, 0, new Constant[0],
+        new Static[0], new InstanceField[0]);
+
+    // nodes point at random nodes, with nulls, self edges and shared
+    // targets; some nodes are not reachable at all
+    Random random = new Random(7);
+    for (int i = 0; i < numNodes; i++) {
+      handler.instanceDump(FIRST_NODE_ID + i, 1, NODE_CLASS_ID, new Value<?>[] {
+          ref(random, numNodes), ref(random, numNodes) });
+    }
+    long[] elems = new long[numNodes / 2];
+    for (int i = 0; i < elems.length; i++) {
+      elems[i] = FIRST_NODE_ID + random.nextInt(numNodes);
+    }
+    handler.objArrayDump(ARRAY_ID, 1, ARRAY_CLASS_ID, elems);
+
+    handler.rootJavaFrame(ARRAY_ID, 1, 0);
+    handler.rootJavaFrame(FIRST_NODE_ID, 1, 1);
+    handler.heapDumpEnd();
+
+    List<String> description = new ArrayList<String>();
+    for (Vertex v : capture.graph.getVertices()) {
+      description.add(v.id + " " + v.repType + " " + v.size + " " + v.retained);
+    }
+    for (Edge<Vertex, String> e : capture.graph.getEdges()) {
+      description.add(e.from.id + " -> " + e.to.id + " " + e.data);
+    }
+    Collections.sort(description);
+    return description;
+  }
+
+  private static Value<Long> ref(Random random, int numNodes) {
+    int target = random.nextInt(numNodes + numNodes / 4);
+    return new Value<Long>(Type.OBJ, target < numNodes ? FIRST_NODE_ID + target : 0L);
+  }
+
+}
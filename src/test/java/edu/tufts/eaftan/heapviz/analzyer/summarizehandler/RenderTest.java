@@ -0,0 +1,63 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import edu.tufts.eaftan.heapviz.util.Graph;
+
+/**
+ * Checks that the deprecated Writer entry point writes the same GraphML as
+ * writeGraphML.
+ */
+public class RenderTest {
+
+  @Test
+  @SuppressWarnings("deprecation")
+  public void writerOutputMatchesChannelOutput() throws Exception {
+    Graph<Vertex, String> g = new Graph<Vertex, String>();
+    Vertex a = new Vertex(1, "Caf\u00e9", 16, null);
+    Vertex b = new Vertex(2, "\u4e2d\ud83d\ude00", 24, null);
+    g.addVertex(a);
+    g.addVertex(b);
+    g.setRoot(a);
+    g.addEdge(a, b, "next");
+    g.addEdge(b, a, null);
+
+    File file = File.createTempFile("render", ".xml");
+    file.deleteOnExit();
+    GraphMLWriter out = new GraphMLWriter(new FileOutputStream(file).getChannel());
+    Render.writeGraphML(out, g, false, true);
+    out.close();
+    String expected = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+    StringWriter writer = new StringWriter();
+    Render.computeGraphMLString(writer, g, false, true);
+    assertEquals(expected, writer.toString());
+    assertTrue(expected.contains("Caf\u00e9"));
+  }
+
+}
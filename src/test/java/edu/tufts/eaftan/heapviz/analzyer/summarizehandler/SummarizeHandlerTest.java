@@ -0,0 +1,117 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.analzyer.summarizehandler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import edu.tufts.eaftan.heapviz.summarizer.Summarizer;
+import edu.tufts.eaftan.heapviz.summarizer.Utils;
+import edu.tufts.eaftan.heapviz.util.Graph;
+import edu.tufts.eaftan.heapviz.util.IdSet;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Constant;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.InstanceField;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Static;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Type;
+import edu.tufts.eaftan.hprofparser.parser.datastructures.Value;
+
+/**
+ * Checks the retained sizes that SummarizeHandler gives to the vertices of
+ * a summary.
+ */
+public class SummarizeHandlerTest {
+
+  private static final long NODE_CLASS_ID = 100;
+  private static final long A = 1000;
+  private static final long B = 1001;
+  private static final long C = 1002;
+  private static final long D = 1003;
+  private static final long E = 1004;
+  private static final long MISSING = 9999;
+
+  /**
+   * Merges A with B, which it dominates, and C with E, which are in
+   * different subtrees, and adds a vertex for D and an object that is not
+   * in the heap
+   */
+  private static class MergingSummarizer implements Summarizer {
+    Graph<Vertex, String> summary;
+
+    @Override
+    public Graph<Vertex, String> summarize(Graph<Vertex, String> g) {
+      Map<Long, Vertex> byId = new HashMap<Long, Vertex>();
+      for (Vertex v : g.getVertices()) {
+        byId.put(v.id, v);
+      }
+      List<List<Vertex>> groups = new ArrayList<List<Vertex>>();
+      groups.add(Arrays.asList(byId.get(A), byId.get(B)));
+      groups.add(Arrays.asList(byId.get(C), byId.get(E)));
+      summary = Utils.quotient(g, groups);
+      summary.addVertex(new Vertex(summary.getIdAllocator().nextId(),
+          IdSet.of(new long[] { D, MISSING }), "Node", new ArrayList<String>(), 16, null));
+      return summary;
+    }
+  }
+
+  @Test
+  public void mergedVerticesRetainWhatAnyMemberDominates() {
+    MergingSummarizer summarizer = new MergingSummarizer();
+    SummarizeHandler handler = new SummarizeHandler(true, false, true, summarizer);
+
+    handler.stringInUTF8(1, "Node");
+    handler.stringInUTF8(2, "left");
+    handler.stringInUTF8(3, "right");
+    handler.loadClass(1, NODE_CLASS_ID, 0, 1);
+    handler.stackTrace(1, 1, 0, new long[0]);
+    handler.heapDump();
+    handler.classDump(NODE_CLASS_ID, 1, 0, 0, 0, 0, 0, 0, 16, new Constant[0],
+        new Static[0], new InstanceField[] {
+            new InstanceField(2, Type.OBJ), new InstanceField(3, Type.OBJ) });
+
+    // A -> B -> C and A -> D -> E, each object taking 16 bytes
+    node(handler, A, B, D);
+    node(handler, B, C, 0);
+    node(handler, C, 0, 0);
+    node(handler, D, E, 0);
+    node(handler, E, 0, 0);
+    handler.rootJavaFrame(A, 1, 0);
+    handler.heapDumpEnd();
+
+    Map<String, Long> retained = new HashMap<String, Long>();
+    for (Vertex v : summarizer.summary.getVertices()) {
+      retained.put(Arrays.toString(v.getIds()), v.retained);
+    }
+    // B is dominated by A, so it is not counted twice
+    assertEquals(Long.valueOf(80), retained.get(Arrays.toString(new long[] { A, B })));
+    assertEquals(Long.valueOf(32), retained.get(Arrays.toString(new long[] { C, E })));
+    // the missing object is skipped
+    assertEquals(Long.valueOf(32), retained.get(Arrays.toString(new long[] { D, MISSING })));
+  }
+
+  private static void node(SummarizeHandler handler, long id, long left, long right) {
+    handler.instanceDump(id, 1, NODE_CLASS_ID, new Value<?>[] {
+        new Value<Long>(Type.OBJ, left), new Value<Long>(Type.OBJ, right) });
+  }
+
+}
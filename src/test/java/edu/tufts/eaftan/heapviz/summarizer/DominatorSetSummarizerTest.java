@@ -0,0 +1,77 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.summarizer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
+import edu.tufts.eaftan.heapviz.util.Graph;
+
+/**
+ * Checks which vertices DominatorSetSummarizer puts in the same group.
+ */
+public class DominatorSetSummarizerTest {
+
+  @Test
+  public void verticesAreGroupedByTypeAndOwner() throws Exception {
+    String[] types = { null, "Root", "List", "List", "List", "String",
+        "String", "String", "Map", "List", "String", "List" };
+    Vertex[] v = new Vertex[types.length];
+    Graph<Vertex, String> g = new Graph<Vertex, String>();
+    for (int i = 1; i < v.length; i++) {
+      v[i] = new Vertex(i, types[i], 16, null);
+      g.addVertex(v[i]);
+    }
+    g.setRoot(v[1]);
+
+    // a list owned by the root, which becomes one vertex
+    g.addEdge(v[1], v[2], "list");
+    g.addEdge(v[2], v[3], "next");
+    g.addEdge(v[3], v[4], "next");
+    // strings owned by the list, and one owned by the root
+    g.addEdge(v[2], v[5], "value");
+    g.addEdge(v[3], v[6], "value");
+    g.addEdge(v[1], v[7], "name");
+    // a list owned by a map is kept apart from the root's list
+    g.addEdge(v[1], v[8], "map");
+    g.addEdge(v[8], v[9], "entries");
+    // shared by the list and the map, so owned by the root
+    g.addEdge(v[4], v[10], "value");
+    g.addEdge(v[8], v[10], "key");
+    // not reachable from the root
+    g.addEdge(v[11], v[2], "next");
+
+    Graph<Vertex, String> summary = new DominatorSetSummarizer().summarize(g);
+
+    List<String> groups = new ArrayList<String>();
+    for (Vertex s : summary.getVertices()) {
+      groups.add(Arrays.toString(s.getIds()));
+    }
+    Collections.sort(groups);
+    assertEquals(Arrays.asList("[11]", "[1]", "[2, 3, 4]", "[5, 6]", "[7, 10]",
+        "[8]", "[9]"), groups);
+    assertEquals("[1]", Arrays.toString(summary.getRoot().getIds()));
+  }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.summarizer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Analysis;
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
+import edu.tufts.eaftan.heapviz.util.Graph;
+
+/**
+ * Checks that PredecessorPartition groups vertices as merging vertices with
+ * the same predecessors and type, round by round, does.
+ */
+public class PredecessorPartitionTest {
+
+  private static final String[] TYPES = { "A", "B", "C" };
+
+  @Test
+  public void partitionMatchesMergingRoundByRound() throws Exception {
+    Random random = new Random(5);
+    for (int round = 0; round < 300; round++) {
+      int n = 1 + random.nextInt(40);
+      Graph<Vertex, String> g = new Graph<Vertex, String>();
+      Vertex[] v = new Vertex[n];
+      for (int i = 0; i < n; i++) {
+        v[i] = new Vertex(i + 1, TYPES[random.nextInt(TYPES.length)], 8, null);
+        g.addVertex(v[i]);
+      }
+      // random edges, which give cycles and self edges
+      int edges = random.nextInt(2 * n + 1);
+      for (int k = 0; k < edges; k++) {
+        addEdgeIfNew(g, v[random.nextInt(n)], v[random.nextInt(n)]);
+      }
+      // in every other round, a hub that most vertices point at
+      if (round % 2 == 0) {
+        Vertex hub = v[random.nextInt(n)];
+        for (int i = 0; i < n; i++) {
+          if (random.nextInt(4) != 0) {
+            addEdgeIfNew(g, v[i], hub);
+          }
+        }
+      }
+
+      assertEquals("round " + round, merged(g), partitioned(g));
+    }
+  }
+
+  @Test
+  public void fanOutIntoAHubIsMergedLevelByLevel() throws Exception {
+    // a tree of A's three levels deep whose leaves all point at one hub:
+    // each level merges in turn, and the hub is re-keyed every time
+    Graph<Vertex, String> g = new Graph<Vertex, String>();
+    Vertex root = new Vertex(1, "Root", 8, null);
+    Vertex hub = new Vertex(2, "Hub", 8, null);
+    g.addVertex(root);
+    g.addVertex(hub);
+    long id = 3;
+    List<Vertex> level = Collections.singletonList(root);
+    for (int depth = 0; depth < 3; depth++) {
+      List<Vertex> next = new ArrayList<Vertex>();
+      for (Vertex parent : level) {
+        for (int i = 0; i < 8; i++) {
+          Vertex child = new Vertex(id++, "A", 8, null);
+          g.addVertex(child);
+          g.addEdge(parent, child, null);
+          next.add(child);
+        }
+      }
+      level = next;
+    }
+    for (Vertex leaf : level) {
+      g.addEdge(leaf, hub, null);
+    }
+
+    List<String> groups = partitioned(g);
+    assertEquals(merged(g), groups);
+    assertEquals(5, groups.size());
+  }
+
+  private static void addEdgeIfNew(Graph<Vertex, String> g, Vertex from, Vertex to)
+      throws Exception {
+    if (!g.getSuccessors(from).contains(to)) {
+      g.addEdge(from, to, null);
+    }
+  }
+
+  /**
+   * The objects in each vertex of the summary that PredecessorPartition
+   * gives
+   */
+  private static List<String> partitioned(Graph<Vertex, String> g) {
+    return describe(Utils.quotient(g, PredecessorPartition.compute(g)));
+  }
+
+  /**
+   * The objects in each vertex after merging round by round until nothing
+   * changes
+   */
+  private static List<String> merged(Graph<Vertex, String> g) {
+    Graph<Vertex, String> copy = g.deepishCopy();
+    while (Analysis.mergeSamePredecessorsAndType(copy)) {
+      // keep merging
+    }
+    return describe(copy);
+  }
+
+  private static List<String> describe(Graph<Vertex, String> g) {
+    List<String> description = new ArrayList<String>();
+    for (Vertex v : g.getVertices()) {
+      description.add(Arrays.toString(v.getIds()) + " " + v.repType);
+    }
+    Collections.sort(description);
+    return description;
+  }
+
+}
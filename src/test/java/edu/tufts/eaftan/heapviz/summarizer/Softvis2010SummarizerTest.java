@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.summarizer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Analysis;
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
+import edu.tufts.eaftan.heapviz.util.Graph;
+
+/**
+ * Checks that Softvis2010Summarizer.findBackbones finds the groups that
+ * merging backbone vertices pairwise does.
+ */
+public class Softvis2010SummarizerTest {
+
+  @Test
+  public void chainIsOneBackbone() throws Exception {
+    Vertex[] v = vertices("Root", "Node", "Node", "Node", "Value");
+    Graph<Vertex, String> g = graph(v);
+    g.addEdge(v[1], v[2], "head");
+    g.addEdge(v[2], v[3], "next");
+    g.addEdge(v[3], v[4], "next");
+    g.addEdge(v[3], v[5], "value");
+
+    assertEquals(Arrays.asList("[1] Root", "[2, 3, 4] Node", "[5] Value"), backbones(g));
+    assertEquals(merged(g), backbones(g));
+  }
+
+  @Test
+  public void branchesJoinAtTheirCommonVertex() throws Exception {
+    // two same-type subtrees under one node, and a node of another type
+    // that separates a third
+    Vertex[] v = vertices("Tree", "Tree", "Tree", "Tree", "Leaf", "Tree", "Leaf");
+    Graph<Vertex, String> g = graph(v);
+    g.addEdge(v[1], v[2], "left");
+    g.addEdge(v[1], v[3], "right");
+    g.addEdge(v[3], v[4], "left");
+    g.addEdge(v[3], v[5], "right");
+    g.addEdge(v[5], v[6], "child");
+    g.addEdge(v[6], v[7], "child");
+
+    assertEquals(Arrays.asList("[1, 2, 3, 4] Tree", "[5] Leaf", "[6] Tree", "[7] Leaf"),
+        backbones(g));
+    assertEquals(merged(g), backbones(g));
+  }
+
+  @Test
+  public void cycleIsOneBackbone() throws Exception {
+    Vertex[] v = vertices("Ring", "Ring", "Ring", "Other");
+    Graph<Vertex, String> g = graph(v);
+    g.addEdge(v[1], v[2], "next");
+    g.addEdge(v[2], v[3], "next");
+    g.addEdge(v[3], v[1], "next");
+    g.addEdge(v[3], v[3], "self");
+    g.addEdge(v[4], v[4], "self");
+    g.addEdge(v[4], v[1], "ring");
+
+    assertEquals(Arrays.asList("[1, 2, 3] Ring", "[4] Other"), backbones(g));
+    assertEquals(merged(g), backbones(g));
+  }
+
+  @Test
+  public void backbonesMatchPairwiseMerging() throws Exception {
+    String[] types = { "A", "B", "C" };
+    Random random = new Random(3);
+    for (int round = 0; round < 200; round++) {
+      int n = 1 + random.nextInt(30);
+      String[] vertexTypes = new String[n];
+      for (int i = 0; i < n; i++) {
+        vertexTypes[i] = types[random.nextInt(types.length)];
+      }
+      Vertex[] v = vertices(vertexTypes);
+      Graph<Vertex, String> g = graph(v);
+      int edges = random.nextInt(2 * n + 1);
+      for (int k = 0; k < edges; k++) {
+        Vertex from = v[1 + random.nextInt(n)];
+        Vertex to = v[1 + random.nextInt(n)];
+        if (!g.getSuccessors(from).contains(to)) {
+          g.addEdge(from, to, null);
+        }
+      }
+
+      assertEquals("round " + round, merged(g), backbones(g));
+    }
+  }
+
+  /**
+   * Make vertices 1..n of the given types; v[0] is unused
+   */
+  private static Vertex[] vertices(String... types) {
+    Vertex[] v = new Vertex[types.length + 1];
+    for (int i = 0; i < types.length; i++) {
+      v[i + 1] = new Vertex(i + 1, types[i], 8, null);
+    }
+    return v;
+  }
+
+  private static Graph<Vertex, String> graph(Vertex[] v) {
+    Graph<Vertex, String> g = new Graph<Vertex, String>();
+    for (int i = 1; i < v.length; i++) {
+      g.addVertex(v[i]);
+    }
+    return g;
+  }
+
+  /**
+   * The objects in each vertex after merging the backbones found by
+   * findBackbones
+   */
+  private static List<String> backbones(Graph<Vertex, String> g) {
+    return describe(Utils.quotient(g, Softvis2010Summarizer.findBackbones(g)));
+  }
+
+  /**
+   * The objects in each vertex after merging linked vertices of the same
+   * type two at a time
+   */
+  private static List<String> merged(Graph<Vertex, String> g) {
+    Graph<Vertex, String> copy = g.deepishCopy();
+    Analysis.mergeBackbones(copy);
+    return describe(copy);
+  }
+
+  private static List<String> describe(Graph<Vertex, String> g) {
+    List<String> description = new ArrayList<String>();
+    for (Vertex v : g.getVertices()) {
+      description.add(Arrays.toString(v.getIds()) + " " + v.repType);
+    }
+    Collections.sort(description);
+    return description;
+  }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.summarizer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Analysis;
+import edu.tufts.eaftan.heapviz.analzyer.summarizehandler.Vertex;
+import edu.tufts.eaftan.heapviz.util.Edge;
+import edu.tufts.eaftan.heapviz.util.Graph;
+
+/**
+ * Checks that Utils.quotient gives the same graph as merging each group in
+ * turn.
+ */
+public class UtilsTest {
+
+  @Test
+  public void quotientMatchesMergingEachGroup() throws Exception {
+    Vertex[] v = new Vertex[9];
+    Graph<Vertex, String> g = new Graph<Vertex, String>();
+    for (int i = 1; i < v.length; i++) {
+      v[i] = new Vertex(i, i <= 5 ? "Node" : "Leaf", i * 8, null);
+      g.addVertex(v[i]);
+    }
+    g.setRoot(v[1]);
+
+    g.addEdge(v[1], v[2], "a");   // inside the root's group
+    g.addEdge(v[1], v[3], "b");   // two edges between the same groups
+    g.addEdge(v[2], v[4], "c");
+    g.addEdge(v[3], v[6], "d");
+    g.addEdge(v[4], v[6], "e");
+    g.addEdge(v[5], v[5], "f");   // self edges in groups are dropped
+    g.addEdge(v[6], v[6], "g");
+    g.addEdge(v[6], v[7], "h");
+    g.addEdge(v[7], v[3], "i");   // parallel edges from a vertex in no group
+    g.addEdge(v[7], v[4], "j");
+    g.addEdge(v[7], v[8], "k");   // between vertices in no group
+    g.addEdge(v[8], v[7], "l");
+    g.addEdge(v[8], v[1], "m");
+
+    List<List<Vertex>> groups = new ArrayList<List<Vertex>>();
+    groups.add(Arrays.asList(v[1], v[2]));
+    groups.add(Arrays.asList(v[3], v[4], v[5]));
+    groups.add(Arrays.asList(v[6]));
+
+    Graph<Vertex, String> quotient = Utils.quotient(g, groups);
+
+    Graph<Vertex, String> merged = g.deepishCopy();
+    for (List<Vertex> group : groups) {
+      Analysis.mergeVertices(merged, group);
+    }
+
+    assertEquals(describe(merged), describe(quotient));
+    assertEquals(5, quotient.getNumVertices());
+    assertEquals(7, quotient.getEdges().size());
+    assertEquals("[1, 2]", Arrays.toString(quotient.getRoot().getIds()));
+
+    // the input is left as it was
+    assertEquals(8, g.getNumVertices());
+    assertEquals(13, g.getEdges().size());
+    assertEquals(v[1], g.getRoot());
+  }
+
+  /**
+   * Describe the vertices and edges of a graph by the objects each vertex
+   * represents, since merged vertices get new ids
+   */
+  private static List<String> describe(Graph<Vertex, String> g) {
+    List<String> description = new ArrayList<String>();
+    for (Vertex v : g.getVertices()) {
+      description.add(Arrays.toString(v.getIds()) + " " + v.repType + " " + v.size);
+    }
+    for (Edge<Vertex, String> e : g.getEdges()) {
+      description.add(Arrays.toString(e.from.getIds()) + " -> "
+          + Arrays.toString(e.to.getIds()) + " " + e.data);
+    }
+    Collections.sort(description);
+    return description;
+  }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.BitSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Checks that every bit of an AtomicBitSet is claimed by exactly one
+ * thread, even when all the threads set bits in the same word.
+ */
+public class AtomicBitSetTest {
+
+  @Test
+  public void setReportsWhetherTheBitWasClear() {
+    AtomicBitSet bits = new AtomicBitSet(130);
+    assertTrue(bits.set(0));
+    assertTrue(bits.set(129));
+    assertFalse(bits.set(129));
+    assertTrue(bits.get(0));
+    assertFalse(bits.get(64));
+
+    BitSet expected = new BitSet();
+    expected.set(0);
+    expected.set(129);
+    assertEquals(expected, bits.toBitSet());
+  }
+
+  @Test
+  public void racingThreadsClaimEachBitOnce() throws InterruptedException {
+    for (int round = 0; round < 20; round++) {
+      final AtomicBitSet bits = new AtomicBitSet(64);
+      final AtomicInteger claimed = new AtomicInteger();
+      final CountDownLatch start = new CountDownLatch(1);
+      Thread[] threads = new Thread[8];
+      for (int t = 0; t < threads.length; t++) {
+        final int offset = t;
+        threads[t] = new Thread() {
+          @Override
+          public void run() {
+            try {
+              start.await();
+            } catch (InterruptedException e) {
+              return;
+            }
+            // each thread sets all the bits of the word, in a different order
+            for (int i = 0; i < 64; i++) {
+              if (bits.set((i * 5 + offset * 8) & 63)) {
+                claimed.incrementAndGet();
+              }
+            }
+          }
+        };
+        threads[t].start();
+      }
+      start.countDown();
+      for (Thread thread : threads) {
+        thread.join();
+      }
+
+      assertEquals(64, claimed.get());
+      assertEquals(64, bits.toBitSet().cardinality());
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the structure of a small CompactGraph and its conversion to a Graph.
+ */
+public class CompactGraphTest {
+
+  private CompactGraph g;
+
+  @Before
+  public void setUp() {
+    CompactGraph.Builder builder = new CompactGraph.Builder(0);
+    for (int i = 0; i < 4; i++) {
+      builder.addVertex();
+    }
+    builder.addEdge(0, 2, "b");
+    builder.addEdge(0, 1, "a");
+    builder.addEdge(1, 3, null);
+    builder.addEdge(2, 3, "c");
+    builder.addEdge(0, 1, "a");   // duplicate
+    builder.addEdge(0, 1, null);  // same endpoints, different label
+    g = builder.build();
+  }
+
+  @Test
+  public void edgesAreSortedAndDeduplicated() {
+    assertEquals(4, g.getNumVertices());
+    assertEquals(5, g.getNumEdges());
+    assertEquals(1, g.getNumDuplicateEdges());
+
+    assertEquals(3, g.outDegree(0));
+    assertEquals(1, g.successor(0, 0));
+    assertNull(g.getLabel(g.successorLabel(0, 0)));
+    assertEquals("a", g.getLabel(g.successorLabel(0, 1)));
+    assertEquals(2, g.successor(0, 2));
+
+    assertEquals(2, g.inDegree(3));
+    assertEquals(1, g.predecessor(3, 0));
+    assertEquals(2, g.predecessor(3, 1));
+    assertEquals("c", g.getLabel(g.predecessorLabel(3, 1)));
+  }
+
+  @Test
+  public void postorderingVisitsChildrenFirst() {
+    assertArrayEquals(new int[] { 3, 1, 2, 0 }, g.computePostordering(0));
+    assertArrayEquals(new int[] { 3, 2 }, g.computePostordering(2));
+  }
+
+  @Test
+  public void dominatorsOfTheLengauerTarjanExample() {
+    // the example graph from Lengauer and Tarjan's paper, with R..L as 0..12.
+    // Vertex 13 has no edges, so it is unreachable and gets no dominator.
+    int[][] edges = {
+      { 0, 1 }, { 0, 2 }, { 0, 3 }, { 1, 4 }, { 2, 1 }, { 2, 4 }, { 2, 5 },
+      { 3, 6 }, { 3, 7 }, { 4, 12 }, { 5, 8 }, { 6, 9 }, { 7, 9 }, { 7, 10 },
+      { 8, 5 }, { 8, 11 }, { 9, 11 }, { 10, 9 }, { 11, 0 }, { 11, 9 }, { 12, 8 }
+    };
+    CompactGraph.Builder builder = new CompactGraph.Builder(edges.length);
+    for (int i = 0; i < 14; i++) {
+      builder.addVertex();
+    }
+    for (int[] e : edges) {
+      builder.addEdge(e[0], e[1], null);
+    }
+    assertArrayEquals(new int[] { 0, 0, 0, 0, 0, 0, 3, 3, 0, 0, 7, 0, 4, -1 },
+        builder.build().computeDominators(0));
+  }
+
+  @Test
+  public void builderCanOnlyBeBuiltOnce() {
+    CompactGraph.Builder builder = new CompactGraph.Builder(1);
+    builder.addVertex();
+    builder.addEdge(0, 0, null);
+    assertEquals(1, builder.build().getNumEdges());
+    try {
+      builder.addEdge(0, 0, "a");
+      fail("Added an edge to a built graph");
+    } catch (IllegalStateException expected) {
+    }
+    try {
+      builder.build();
+      fail("Built a graph twice");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  @Test
+  public void toGraphCopiesEdges() {
+    Graph<Character, String> graph = g.toGraph(Arrays.asList('w', 'x', 'y', 'z'));
+    assertEquals(4, graph.getNumVertices());
+    assertEquals(5, graph.getEdges().size());
+    assertEquals(3, graph.getOutgoingEdges('w').size());
+    assertEquals(2, graph.getIncomingEdges('z').size());
+  }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks retained sizes computed over a small dominator tree.
+ */
+public class DominatorTreeTest {
+
+  private static final long[] SIZES = { 1, 2, 4, 8, 16, 32, 64 };
+
+  private DominatorTree tree;
+
+  @Before
+  public void setUp() {
+    // 3 is reached through both 1 and 2, so it is dominated by 0; 6 is unreachable
+    CompactGraph.Builder builder = new CompactGraph.Builder(0);
+    for (int i = 0; i < 7; i++) {
+      builder.addVertex();
+    }
+    builder.addEdge(0, 1, null);
+    builder.addEdge(0, 2, null);
+    builder.addEdge(1, 3, null);
+    builder.addEdge(2, 3, null);
+    builder.addEdge(3, 4, null);
+    builder.addEdge(1, 5, null);
+    builder.addEdge(6, 0, null);
+    tree = builder.build().computeDominatorTree(0);
+  }
+
+  @Test
+  public void retainedSizesSumSubtrees() {
+    assertArrayEquals(new int[] { 0, 0, 0, 0, 3, 1, -1 }, tree.getDominators());
+    assertArrayEquals(new long[] { 63, 34, 4, 24, 16, 32, 0 },
+        tree.computeRetainedSizes(SIZES));
+  }
+
+  @Test
+  public void groupsCountNestedMembersOnce() {
+    long[] retained = tree.computeRetainedSizes(SIZES);
+    int[] groups = { -1, 0, 1, -1, 1, 0, -1 };
+    assertArrayEquals(new long[] { 34, 20 }, tree.computeRetainedSizes(retained, groups, 2));
+  }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GraphOverlayTest {
+
+  private static Graph<Integer, String> chain(int n) throws Exception {
+    Graph<Integer, String> g = new Graph<Integer, String>();
+    for (int i = 0; i < n; i++) {
+      g.addVertex(i);
+    }
+    for (int i = 0; i + 1 < n; i++) {
+      g.addEdge(i, i + 1, "next");
+    }
+    return g;
+  }
+
+  @Test
+  public void changesDoNotReachTheBase() throws Exception {
+    Graph<Integer, String> base = chain(5);
+    GraphOverlay<Integer, String> overlay = new GraphOverlay<Integer, String>(base);
+
+    overlay.removeVertex(2);
+    overlay.addVertex(10);
+    overlay.addEdge(1, 10, "a");
+    overlay.addEdge(10, 3, "b");
+
+    assertEquals(5, overlay.getNumVertices());
+    assertFalse(overlay.containsVertex(2));
+    assertEquals(1, overlay.getOutDegree(1));
+    assertEquals(Integer.valueOf(10), overlay.getOutgoingEdge(1, 0).to);
+    assertEquals(1, overlay.getInDegree(3));
+    assertEquals(4, overlay.getEdges().size());
+
+    assertEquals(5, base.getNumVertices());
+    assertTrue(base.containsVertex(2));
+    assertFalse(base.containsVertex(10));
+    assertEquals(4, base.getEdges().size());
+    assertEquals(Integer.valueOf(2), base.getOutgoingEdge(1, 0).to);
+  }
+
+  @Test
+  public void ownershipEdgesCopyBaseEdges() throws Exception {
+    Graph<Integer, String> base = chain(3);
+    GraphOverlay<Integer, String> overlay = new GraphOverlay<Integer, String>(base);
+
+    overlay.addOwnershipEdge(0, 1, "next");
+    assertEquals(1, overlay.getOutDegree(0));
+    Edge<Integer, String> e = overlay.getOutgoingEdge(0, 0);
+    assertTrue(e.pointer);
+    assertTrue(e.ownership);
+    assertFalse(base.getOutgoingEdge(0, 0).ownership);
+
+    try {
+      overlay.addEdge(0, 1, "next");
+      fail("Duplicate edge was added");
+    } catch (DuplicateEdgeException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void bulkOwnershipEdgesLeaveTheBaseAlone() throws Exception {
+    Graph<Integer, String> base = chain(3);
+    GraphOverlay<Integer, String> overlay = new GraphOverlay<Integer, String>(base);
+    overlay.addEdge(0, 2, "skip");
+
+    overlay.addOwnershipEdges(overlay.computeDominators(0));
+    assertEquals(3, overlay.getEdges().size());
+    for (Edge<Integer, String> e : overlay.getEdges()) {
+      assertEquals(!e.data.equals("next") || e.from == 0, e.ownership);
+    }
+    for (Edge<Integer, String> e : base.getEdges()) {
+      assertFalse(e.ownership);
+    }
+  }
+
+  @Test
+  public void cachedListsFollowEveryChange() throws Exception {
+    Random random = new Random(11);
+    for (int round = 0; round < 20; round++) {
+      // vertex 0 is a hub whose lists are read between changes
+      Graph<Integer, String> base = new Graph<Integer, String>();
+      for (int i = 0; i < 40; i++) {
+        base.addVertex(i);
+      }
+      for (int i = 0; i < 150; i++) {
+        addRandomEdge(base, random, 40);
+      }
+      for (int i = 1; i < 40; i++) {
+        addEdgeIfNew(base, 0, i, "hub");
+        addEdgeIfNew(base, i, 0, "hub");
+      }
+
+      GraphOverlay<Integer, String> overlay = new GraphOverlay<Integer, String>(base);
+      Graph<Integer, String> copy = base.deepishCopy();
+      int nextVertex = 40;
+      for (int step = 0; step < 100; step++) {
+        List<Integer> vertices = new ArrayList<Integer>(copy.getVertices());
+        Collections.sort(vertices);
+        Integer v = vertices.get(random.nextInt(vertices.size()));
+        Integer w = vertices.get(random.nextInt(vertices.size()));
+        switch (random.nextInt(5)) {
+          case 0:
+            if (!v.equals(0)) {
+              overlay.removeVertex(v);
+              copy.removeVertex(v);
+            }
+            break;
+          case 1:
+            overlay.addVertex(nextVertex);
+            copy.addVertex(nextVertex);
+            overlay.addEdge(0, nextVertex, "new");
+            copy.addEdge(0, nextVertex, "new");
+            nextVertex++;
+            break;
+          case 2:
+            String label = "l" + random.nextInt(3);
+            assertEquals(addEdgeIfNew(copy, v, w, label), addEdgeIfNew(overlay, v, w, label));
+            break;
+          case 3:
+            overlay.addOwnershipEdge(v, w, null);
+            copy.addOwnershipEdge(v, w, null);
+            break;
+          default:
+            overlay.getOutDegree(v);
+            overlay.getInDegree(v);
+        }
+        overlay.getOutDegree(0);
+        overlay.getInDegree(0);
+
+        assertTrue(overlay.repOK());
+        for (Integer u : vertices) {
+          if (copy.containsVertex(u)) {
+            assertEquals(describe(copy.getOutgoingEdges(u)), describe(overlay.getOutgoingEdges(u)));
+            assertEquals(describe(copy.getIncomingEdges(u)), describe(overlay.getIncomingEdges(u)));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void dominatorsSeeTheOverlay() throws Exception {
+    Graph<Integer, String> base = chain(4);
+    GraphOverlay<Integer, String> overlay = new GraphOverlay<Integer, String>(base);
+    overlay.addEdge(0, 3, "skip");
+
+    Map<Integer, Integer> doms = overlay.computeDominators(0);
+    assertEquals(Integer.valueOf(0), doms.get(3));
+    assertEquals(Integer.valueOf(2), base.computeDominators(0).get(3));
+  }
+
+  private static void addRandomEdge(Graph<Integer, String> g, Random random, int n) {
+    addEdgeIfNew(g, random.nextInt(n), random.nextInt(n), "e" + random.nextInt(2));
+  }
+
+  private static boolean addEdgeIfNew(Graph<Integer, String> g, int from, int to, String data) {
+    try {
+      g.addEdge(from, to, data);
+      return true;
+    } catch (DuplicateEdgeException e) {
+      return false;
+    }
+  }
+
+  private static List<String> describe(List<Edge<Integer, String>> edges) {
+    List<String> description = new ArrayList<String>();
+    for (Edge<Integer, String> e : edges) {
+      description.add(e.from + "->" + e.to + " " + e.data + " " + e.pointer + " " + e.ownership);
+    }
+    Collections.sort(description);
+    return description;
+  }
+
+}
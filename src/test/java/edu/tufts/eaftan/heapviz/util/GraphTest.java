@@ -0,0 +1,240 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks edge bookkeeping in Graph, in particular for vertices with enough
+ * edges to be indexed.
+ */
+public class GraphTest {
+
+  @Test
+  public void duplicateEdgesAreDetectedAtHighDegree() throws Exception {
+    Graph<Integer, String> g = new Graph<Integer, String>();
+    for (int i = 0; i <= 100; i++) {
+      g.addVertex(i);
+    }
+    for (int i = 1; i <= 100; i++) {
+      g.addEdge(0, i, "a");
+    }
+    g.addEdge(0, 50, "b");
+    try {
+      g.addEdge(0, 50, "a");
+      fail("Duplicate edge was added");
+    } catch (DuplicateEdgeException e) {
+      // expected
+    }
+
+    // ownership edges reuse the existing pointer edge
+    g.addOwnershipEdge(0, 60, "a");
+    assertEquals(1, g.getIncomingEdges(60).size());
+    assertTrue(g.getIncomingEdges(60).get(0).ownership);
+
+    g.removeVertex(50);
+    g.addEdge(0, 51, "b");
+    assertEquals(100, g.getOutgoingEdges(0).size());
+    assertEquals(99, g.getSuccessors(0).size());
+  }
+
+  @Test
+  public void indexedEdgesToOneTargetAreRemovedTogether() throws Exception {
+    // like an array whose slots mostly point at the same two objects
+    Graph<Integer, String> g = new Graph<Integer, String>();
+    for (int i = 0; i <= 3; i++) {
+      g.addVertex(i);
+    }
+    for (int slot = 0; slot < 1000; slot++) {
+      g.addEdge(0, 1 + slot % 3, "[" + slot + "]");
+    }
+
+    g.removeVertex(2);
+    assertEquals(667, g.getOutDegree(0));
+    g.addEdge(0, 1, "[1]");
+    try {
+      g.addEdge(0, 3, "[2]");
+      fail("Duplicate edge was added");
+    } catch (DuplicateEdgeException e) {
+      // expected
+    }
+
+    g.removeVertex(1);
+    assertEquals(333, g.getOutDegree(0));
+    for (int i = 0; i < g.getOutDegree(0); i++) {
+      assertEquals(3, (int) g.getOutgoingEdge(0, i).to);
+    }
+  }
+
+  @Test
+  public void edgesWithManyLabelsToOneTargetAreIndexedByLabel() throws Exception {
+    // like a large array holding the same reference in every slot, which
+    // would take quadratic time if the edges to a target were scanned
+    Graph<Integer, String> g = new Graph<Integer, String>();
+    g.addVertex(0);
+    g.addVertex(1);
+    int slots = 3000;
+    for (int slot = 0; slot < slots; slot++) {
+      g.addEdge(0, 1, "[" + slot + "]");
+    }
+    g.addEdge(0, 1, null);
+
+    for (int slot = 0; slot < slots; slot++) {
+      Edge<Integer, String> e = g.findEdge(0, 1, "[" + slot + "]");
+      assertEquals("[" + slot + "]", e.data);
+      assertEquals(Integer.valueOf(1), e.to);
+    }
+    assertNotNull(g.findEdge(0, 1, null));
+    assertNull(g.findEdge(0, 1, "[" + slots + "]"));
+    assertNull(g.findEdge(0, 0, "[0]"));
+
+    g.removeVertex(1);
+    assertEquals(0, g.getOutDegree(0));
+    assertNull(g.findEdge(0, 0, null));
+  }
+
+  @Test
+  public void removingVerticesKeepsOtherListsConsistent() throws Exception {
+    Graph<Integer, String> g = new Graph<Integer, String>();
+    for (int i = 0; i <= 20; i++) {
+      g.addVertex(i);
+    }
+    // 0 is a hub in both directions, 1 has a self edge
+    for (int i = 1; i <= 20; i++) {
+      g.addEdge(0, i, "out");
+      g.addEdge(i, 0, "in");
+    }
+    g.addEdge(1, 1, "self");
+    assertEquals(3, g.getEdges(1).size());
+
+    for (int i = 2; i <= 20; i += 2) {
+      g.removeVertex(i);
+    }
+    g.removeVertex(1);
+    assertEquals(9, g.getOutgoingEdges(0).size());
+    assertEquals(9, g.getIncomingEdges(0).size());
+    for (Edge<Integer, String> e : g.getOutgoingEdges(0)) {
+      assertEquals(1, e.to % 2);
+      assertEquals(1, g.getIncomingEdges(e.to).size());
+    }
+
+    // copies get their own edges
+    Graph<Integer, String> copy = g.deepishCopy();
+    copy.removeVertex(0);
+    assertEquals(9, g.getOutgoingEdges(0).size());
+    assertEquals(1, g.getOutgoingEdges(3).size());
+    assertEquals(0, copy.getOutgoingEdges(3).size());
+  }
+
+  @Test
+  public void cursorsAndVisitorsSeeEveryEdge() throws Exception {
+    Graph<Integer, String> g = new Graph<Integer, String>();
+    for (int i = 0; i < 4; i++) {
+      g.addVertex(i);
+    }
+    g.addEdge(0, 1, "a");
+    g.addEdge(0, 1, "b");
+    g.addEdge(0, 2, "a");
+    g.addEdge(3, 2, "a");
+
+    assertEquals(3, g.getOutDegree(0));
+    assertEquals(2, g.getInDegree(2));
+    int sum = 0;
+    for (int i = 0; i < g.getOutDegree(0); i++) {
+      sum += g.getOutgoingEdge(0, i).to;
+    }
+    assertEquals(4, sum);
+
+    final int[] visits = new int[4];
+    g.forEachSuccessor(0, new Graph.VertexVisitor<Integer>() {
+      public void visit(Integer v) {
+        visits[v]++;
+      }
+    });
+    g.forEachPredecessor(2, new Graph.VertexVisitor<Integer>() {
+      public void visit(Integer v) {
+        visits[v]++;
+      }
+    });
+    assertEquals(1, visits[0]);
+    assertEquals(2, visits[1]);
+    assertEquals(1, visits[2]);
+    assertEquals(1, visits[3]);
+  }
+
+  @Test
+  public void dominatorsAgreeWithIterativeAlgorithm() throws Exception {
+    Random random = new Random(42);
+    for (int round = 0; round < 200; round++) {
+      int n = 1 + random.nextInt(60);
+      Graph<Integer, String> g = new Graph<Integer, String>();
+      for (int i = 0; i < n; i++) {
+        g.addVertex(i);
+      }
+      // a random spanning tree keeps every vertex reachable, as the
+      // iterative algorithm requires
+      for (int i = 1; i < n; i++) {
+        g.addEdge(random.nextInt(i), i, null);
+      }
+      int extra = random.nextInt(2 * n + 1);
+      for (int k = 0; k < extra; k++) {
+        int from = random.nextInt(n);
+        int to = random.nextInt(n);
+        if (!g.getSuccessors(from).contains(to)) {
+          g.addEdge(from, to, null);
+        }
+      }
+
+      assertEquals("round " + round, g.computeDominatorsIteratively(0),
+          g.computeDominators(0));
+    }
+  }
+
+  @Test
+  public void ownershipEdgesFollowDominators() throws Exception {
+    Graph<Integer, String> g = new Graph<Integer, String>();
+    for (int i = 0; i < 4; i++) {
+      g.addVertex(i);
+    }
+    g.addEdge(0, 1, "a");
+    g.addEdge(0, 2, "b");
+    g.addEdge(1, 3, "c");
+    g.addEdge(2, 3, "d");
+
+    g.addOwnershipEdges(g.computeDominators(0));
+
+    // pointer edges from dominators are marked, and 3 gets a new edge from 0
+    assertTrue(g.getOutgoingEdge(0, 0).ownership);
+    assertTrue(g.getOutgoingEdge(0, 1).ownership);
+    assertFalse(g.getOutgoingEdge(1, 0).ownership);
+    assertEquals(3, g.getOutDegree(0));
+    Edge<Integer, String> e = g.getOutgoingEdge(0, 2);
+    assertEquals(Integer.valueOf(3), e.to);
+    assertTrue(e.ownership);
+    assertFalse(e.pointer);
+  }
+
+}
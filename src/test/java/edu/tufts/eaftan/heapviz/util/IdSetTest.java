@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class IdSetTest {
+
+  @Test
+  public void roundTripsSortedAndDeduplicated() {
+    long[] ids = {Long.MAX_VALUE, 42, -7, 0, 42, Long.MIN_VALUE, 43};
+    IdSet set = IdSet.of(ids);
+    assertEquals(6, set.size());
+    assertArrayEquals(new long[] {Long.MIN_VALUE, -7, 0, 42, 43, Long.MAX_VALUE},
+        set.toArray());
+  }
+
+  @Test
+  public void unionMergesManyParts() {
+    ArrayList<long[]> parts = new ArrayList<long[]>();
+    for (long i = 999; i >= 0; i--) {
+      parts.add(new long[] {0x7f000000L + 8 * i});
+    }
+    parts.add(new long[] {0x7f000000L, 0x7f000000L + 8 * 1000});
+    IdSet set = IdSet.union(parts);
+    assertEquals(1001, set.size());
+    long[] ids = set.toArray();
+    for (int i = 0; i < ids.length; i++) {
+      assertEquals(0x7f000000L + 8 * i, ids[i]);
+    }
+    // one byte per close id
+    assertTrue(set.encodedLength() < 1010);
+  }
+
+}
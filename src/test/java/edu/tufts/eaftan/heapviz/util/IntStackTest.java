@@ -0,0 +1,53 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class IntStackTest {
+
+  @Test
+  public void growsFromAnEmptyCapacity() {
+    IntStack stack = new IntStack(0);
+    for (int i = 0; i < 1000; i++) {
+      stack.push(i);
+    }
+    assertEquals(1000, stack.size());
+    for (int i = 999; i >= 0; i--) {
+      assertEquals(i, stack.pop());
+    }
+    assertTrue(stack.isEmpty());
+  }
+
+  @Test
+  public void popOnEmptyStackFails() {
+    IntStack stack = new IntStack();
+    stack.push(3);
+    stack.clear();
+    assertTrue(stack.isEmpty());
+    try {
+      stack.pop();
+      fail("popped an empty stack");
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Checks reads through a MappedDataInput whose chunks are only 8 bytes long,
+ * so that most values span two chunks.
+ */
+public class MappedDataInputTest {
+
+  private static final int CHUNK_BITS = 3;
+
+  private File file;
+
+  @Test
+  public void sequentialReadsSpanChunks() throws IOException {
+    byte[] bytes = new byte[21];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (i * 37);
+    }
+
+    DataOutputStream out = open();
+    out.writeByte(-1);
+    out.writeShort(0x1234);
+    out.writeInt(-5);
+    out.writeLong(Long.MIN_VALUE + 3);
+    out.write(bytes);
+    out.writeUTF("hé");
+    MappedDataInput in = close(out);
+
+    assertEquals(-1, in.readByte());
+    assertEquals(0x1234, in.readShort());
+    assertEquals(-5, in.readInt());
+    assertEquals(Long.MIN_VALUE + 3, in.readLong());
+    assertEquals(15, in.position());
+
+    byte[] read = new byte[bytes.length + 2];
+    in.readFully(read, 1, bytes.length);
+    assertTrue(Arrays.equals(bytes, Arrays.copyOfRange(read, 1, bytes.length + 1)));
+    assertEquals("hé", in.readUTF());
+    assertEquals(in.length(), in.position());
+    in.close();
+  }
+
+  @Test
+  public void randomAccessAtEveryOffset() throws IOException {
+    DataOutputStream out = open();
+    for (int i = 0; i < 40; i++) {
+      out.writeByte(i * 71 + 5);
+    }
+    MappedDataInput in = close(out);
+
+    ByteBuffer expected = ByteBuffer.allocate(40);
+    for (int i = 0; i < 40; i++) {
+      expected.put((byte) (i * 71 + 5));
+    }
+    for (int offset = 0; offset + 8 <= 40; offset++) {
+      assertEquals(expected.get(offset), in.getByte(offset));
+      assertEquals(expected.getShort(offset), in.getShort(offset));
+      assertEquals(expected.getInt(offset), in.getInt(offset));
+      assertEquals(expected.getLong(offset), in.getLong(offset));
+    }
+    in.close();
+  }
+
+  @Test
+  public void readsPastTheEndFail() throws IOException {
+    DataOutputStream out = open();
+    out.writeInt(1);
+    out.writeInt(2);
+    out.writeShort(3);
+    MappedDataInput in = close(out);
+
+    in.readInt();
+    try {
+      in.readLong();
+      fail("read a long from 6 bytes");
+    } catch (EOFException expected) {
+    }
+    try {
+      in.readFully(new byte[7]);
+      fail("read 7 bytes from 6");
+    } catch (EOFException expected) {
+    }
+    assertEquals(4, in.position());
+    assertEquals(6, in.skipBytes(100));
+    assertEquals(10, in.position());
+    in.close();
+  }
+
+  @Test
+  public void readLineStopsAtEachKindOfTerminator() throws IOException {
+    DataOutputStream out = open();
+    out.writeBytes("first line\r\n\nthird\rfourth\nlast");
+    MappedDataInput in = close(out);
+
+    assertEquals("first line", in.readLine());
+    assertEquals("", in.readLine());
+    assertEquals("third", in.readLine());
+    assertEquals("fourth", in.readLine());
+    assertEquals("last", in.readLine());
+    assertNull(in.readLine());
+    in.close();
+  }
+
+
+  private DataOutputStream open() throws IOException {
+    file = File.createTempFile("mapped", ".bin");
+    file.deleteOnExit();
+    return new DataOutputStream(new FileOutputStream(file));
+  }
+
+  private MappedDataInput close(DataOutputStream out) throws IOException {
+    out.close();
+    return new MappedDataInput(file, CHUNK_BITS);
+  }
+
+}
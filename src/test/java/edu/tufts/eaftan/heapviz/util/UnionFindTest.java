@@ -0,0 +1,55 @@
+/*
+ * Copyright 2014 Edward Aftandilian. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package edu.tufts.eaftan.heapviz.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class UnionFindTest {
+
+  @Test
+  public void unionsJoinSetsAndCountTheirSizes() {
+    UnionFind sets = new UnionFind(6);
+    assertTrue(sets.union(0, 1));
+    assertTrue(sets.union(2, 3));
+    assertTrue(sets.union(3, 1));
+    assertFalse(sets.union(0, 2));
+
+    assertEquals(sets.find(0), sets.find(3));
+    assertEquals(4, sets.size(2));
+    assertEquals(1, sets.size(4));
+    assertTrue(sets.find(4) != sets.find(5));
+  }
+
+  @Test
+  public void longChainsAreFound() {
+    int n = 100000;
+    UnionFind sets = new UnionFind(n);
+    for (int i = 1; i < n; i++) {
+      sets.union(i, i - 1);
+    }
+    int rep = sets.find(0);
+    for (int i = 0; i < n; i++) {
+      assertEquals(rep, sets.find(i));
+    }
+    assertEquals(n, sets.size(n - 1));
+  }
+
+}